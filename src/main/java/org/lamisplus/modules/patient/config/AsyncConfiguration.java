@@ -1,38 +1,72 @@
-package com.mattae.simal.modules.ehr.config;
+package org.lamisplus.modules.patient.config;
 
 import io.github.jhipster.async.ExceptionHandlingAsyncTaskExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
 import org.springframework.aop.interceptor.SimpleAsyncUncaughtExceptionHandler;
+import org.lamisplus.modules.patient.utility.VirtualThreads;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
 
+/**
+ * One executor per workload, sized under patient.executors.pools.*: validation (the default for @Async),
+ * export (streamed table exports), sync (the stages of {@code SyncUploadPipeline} runs) and the scheduler. Tasks keep the submitter's MDC and security context, and each pool publishes
+ * its queue depth, active threads and rejections as patient.executor.* metrics tagged with its name.
+ * <p>
+ * With patient.virtual-threads.enabled on JDK 21+, the validation, export and sync executors start a virtual
+ * thread per task instead; a pool's max-size plus queue-capacity then caps its tasks in flight, and further
+ * submitters wait for a slot rather than being rejected.
+ */
 @Configuration
 @EnableAsync
 @EnableScheduling
+@EnableConfigurationProperties(ExecutorProperties.class)
 @RequiredArgsConstructor
 @Slf4j
 public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer {
+    private final ExecutorProperties executorProperties;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${patient.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
 
     @Override
-    @Bean(name = "taskExecutor")
+    @Bean(name = {"validationExecutor", "taskExecutor"})
     public Executor getAsyncExecutor() {
-        log.debug ("Creating Async Task Executor");
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor ();
-        executor.setCorePoolSize (3);
-        executor.setMaxPoolSize (3);
-        executor.setQueueCapacity (3);
-        return new ExceptionHandlingAsyncTaskExecutor (executor);
+        return createExecutor(ExecutorProperties.VALIDATION);
+    }
+
+    @Bean(name = "exportExecutor")
+    public AsyncTaskExecutor exportExecutor() {
+        return createExecutor(ExecutorProperties.EXPORT);
+    }
+
+    @Bean(name = "syncExecutor")
+    public AsyncTaskExecutor syncExecutor() {
+        return createExecutor(ExecutorProperties.SYNC);
     }
 
     @Override
@@ -46,9 +80,81 @@ public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer
     }
 
     @Bean
-    public Executor scheduledTaskExecutor() {
-        return Executors.newScheduledThreadPool (3);
+    public ThreadPoolTaskScheduler scheduledTaskExecutor() {
+        ExecutorProperties.Pool pool = executorProperties.getPool(ExecutorProperties.SCHEDULED);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(pool.getCoreSize());
+        scheduler.setThreadNamePrefix("patient-" + ExecutorProperties.SCHEDULED + "-");
+        scheduler.setErrorHandler(e -> log.error("scheduled patient job failed", e));
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        bindMetrics(ExecutorProperties.SCHEDULED, scheduler, ThreadPoolTaskScheduler::getScheduledThreadPoolExecutor, null);
+        return scheduler;
     }
 
+    private AsyncTaskExecutor createExecutor(String name) {
+        log.debug("Creating {} task executor", name);
+        ExecutorProperties.Pool pool = executorProperties.getPool(name);
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            return createVirtualExecutor(name, pool);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(pool.getCoreSize());
+        executor.setMaxPoolSize(Math.max(pool.getCoreSize(), pool.getMaxSize()));
+        executor.setQueueCapacity(pool.getQueueCapacity());
+        executor.setKeepAliveSeconds((int) pool.getKeepAlive().getSeconds());
+        executor.setThreadNamePrefix("patient-" + name + "-");
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        RejectedExecutionHandler policy = pool.getRejection() == ExecutorProperties.Rejection.CALLER_RUNS
+                ? new ThreadPoolExecutor.CallerRunsPolicy()
+                : new ThreadPoolExecutor.AbortPolicy();
+        Counter rejected = bindMetrics(name, executor, ThreadPoolTaskExecutor::getThreadPoolExecutor, pool.getRejection());
+        executor.setRejectedExecutionHandler((task, threadPool) -> {
+            if (rejected != null) {
+                rejected.increment();
+            }
+            log.warn("{} executor saturated ({} queued), {}", name, threadPool.getQueue().size(), pool.getRejection());
+            policy.rejectedExecution(task, threadPool);
+        });
+        return new ExceptionHandlingAsyncTaskExecutor(executor);
+    }
+
+    private AsyncTaskExecutor createVirtualExecutor(String name, ExecutorProperties.Pool pool) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(VirtualThreads.threadFactory("patient-" + name + "-vt-"));
+        executor.setConcurrencyLimit(Math.max(pool.getCoreSize(), pool.getMaxSize()) + pool.getQueueCapacity());
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        log.info("{} executor runs tasks on virtual threads", name);
+        return new ExceptionHandlingAsyncTaskExecutor(executor);
+    }
 
+    /**
+     * Registers gauges that read the pool lazily, as the underlying executor only exists once the bean is initialized.
+     * The gauges hold the Spring executor, which lives as long as its bean.
+     */
+    private <T> Counter bindMetrics(String name, T executor, Function<T, ? extends ThreadPoolExecutor> threadPool,
+                                    ExecutorProperties.Rejection rejection) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return null;
+        }
+        Tags tags = Tags.of("name", name);
+        Gauge.builder("patient.executor.queued", executor, e -> threadPool.apply(e).getQueue().size())
+                .tags(tags).register(registry);
+        Gauge.builder("patient.executor.queue.remaining", executor, e -> threadPool.apply(e).getQueue().remainingCapacity())
+                .tags(tags).register(registry);
+        Gauge.builder("patient.executor.active", executor, e -> threadPool.apply(e).getActiveCount())
+                .tags(tags).register(registry);
+        Gauge.builder("patient.executor.pool.size", executor, e -> threadPool.apply(e).getPoolSize())
+                .tags(tags).register(registry);
+        FunctionCounter.builder("patient.executor.completed", executor, e -> threadPool.apply(e).getCompletedTaskCount())
+                .tags(tags).register(registry);
+        if (rejection == null) {
+            return null;
+        }
+        return Counter.builder("patient.executor.rejected")
+                .tags(tags.and("policy", rejection.name().toLowerCase()))
+                .register(registry);
+    }
 }
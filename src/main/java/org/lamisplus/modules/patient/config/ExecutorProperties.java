@@ -0,0 +1,68 @@
+package org.lamisplus.modules.patient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sizing of the module's executors, bound from patient.executors.*. Each workload has its own pool so that
+ * a burst in one (e.g. registration validation) cannot take the threads of another (e.g. an export).
+ */
+@Data
+@ConfigurationProperties(prefix = "patient.executors")
+public class ExecutorProperties {
+    public static final String VALIDATION = "validation";
+    public static final String EXPORT = "export";
+    public static final String SYNC = "sync";
+    public static final String SCHEDULED = "scheduled";
+
+    private Map<String, Pool> pools = new LinkedHashMap<>();
+
+    public ExecutorProperties() {
+        pools.put(VALIDATION, new Pool(4, 16, 200, Rejection.CALLER_RUNS));
+        pools.put(EXPORT, new Pool(2, 2, 0, Rejection.FAIL_FAST));
+        pools.put(SYNC, new Pool(6, 6, 6, Rejection.FAIL_FAST));
+        pools.put(SCHEDULED, new Pool(2, 2, 0, Rejection.FAIL_FAST));
+    }
+
+    /**
+     * Returns the named pool, falling back to its default when only some pools are configured.
+     */
+    public Pool getPool(String name) {
+        Pool pool = pools.get(name);
+        return pool != null ? pool : new ExecutorProperties().pools.get(name);
+    }
+
+    public enum Rejection {
+        /**
+         * A saturated pool runs the task on the submitting thread, which slows the caller down instead of failing it.
+         */
+        CALLER_RUNS,
+        /**
+         * A saturated pool rejects the task at once with a TaskRejectedException.
+         */
+        FAIL_FAST
+    }
+
+    @Data
+    public static class Pool {
+        private int coreSize;
+        private int maxSize;
+        private int queueCapacity;
+        private Duration keepAlive = Duration.ofSeconds(60);
+        private Rejection rejection = Rejection.FAIL_FAST;
+
+        public Pool() {
+        }
+
+        public Pool(int coreSize, int maxSize, int queueCapacity, Rejection rejection) {
+            this.coreSize = coreSize;
+            this.maxSize = maxSize;
+            this.queueCapacity = queueCapacity;
+            this.rejection = rejection;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.lamisplus.modules.patient.config;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.lamisplus.modules.patient.utility.HttpConnectionManager;
+import org.lamisplus.modules.patient.utility.ResumableUploadClient;
+import org.lamisplus.modules.patient.utility.SyncResilience;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientConfiguration {
+
+    /**
+     * Takes the patientSync instances from the resilience4j registries when the application provides them,
+     * so they can be tuned under resilience4j.circuitbreaker/bulkhead/retry.instances.patientSync; otherwise
+     * the module creates its own registries with the defaults of {@link SyncResilience} and publishes their metrics.
+     */
+    @Bean
+    public SyncResilience syncResilience(ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry,
+                                         ObjectProvider<BulkheadRegistry> bulkheadRegistry,
+                                         ObjectProvider<RetryRegistry> retryRegistry,
+                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry meters = meterRegistry.getIfAvailable();
+        CircuitBreakerRegistry circuitBreakers = circuitBreakerRegistry.getIfAvailable();
+        if (circuitBreakers == null) {
+            circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+            if (meters != null) {
+                TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meters);
+            }
+        }
+        BulkheadRegistry bulkheads = bulkheadRegistry.getIfAvailable();
+        if (bulkheads == null) {
+            bulkheads = BulkheadRegistry.ofDefaults();
+            if (meters != null) {
+                TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meters);
+            }
+        }
+        RetryRegistry retries = retryRegistry.getIfAvailable();
+        if (retries == null) {
+            retries = RetryRegistry.ofDefaults();
+            if (meters != null) {
+                TaggedRetryMetrics.ofRetryRegistry(retries).bindTo(meters);
+            }
+        }
+        return new SyncResilience(
+                circuitBreakers.circuitBreaker(SyncResilience.INSTANCE, SyncResilience.defaultCircuitBreakerConfig()),
+                bulkheads.bulkhead(SyncResilience.INSTANCE, SyncResilience.defaultBulkheadConfig()),
+                retries.retry(SyncResilience.INSTANCE, SyncResilience.defaultRetryConfig()));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public HttpConnectionManager httpConnectionManager(HttpClientProperties properties,
+                                                       ObjectProvider<MeterRegistry> meterRegistry,
+                                                       SyncResilience syncResilience) {
+        return new HttpConnectionManager(properties, meterRegistry.getIfAvailable(), syncResilience);
+    }
+
+    @Bean
+    public ResumableUploadClient resumableUploadClient(HttpConnectionManager httpConnectionManager,
+                                                       HttpClientProperties properties) {
+        HttpClientProperties.ChunkedUpload chunkedUpload = properties.getChunkedUpload();
+        return new ResumableUploadClient(
+                httpConnectionManager.getClient(HttpClientProperties.UPLOAD_PROFILE),
+                Paths.get(chunkedUpload.getCheckpointDirectory()),
+                (int) chunkedUpload.getChunkSize().toBytes(),
+                httpConnectionManager.getResilience());
+    }
+}
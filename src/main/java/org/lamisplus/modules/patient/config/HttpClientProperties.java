@@ -0,0 +1,62 @@
+package org.lamisplus.modules.patient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of the shared sync HTTP client, bound from patient.http.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "patient.http")
+public class HttpClientProperties {
+    public static final String DEFAULT_PROFILE = "default";
+    public static final String UPLOAD_PROFILE = "upload";
+
+    private int maxIdleConnections = 5;
+    private Duration keepAlive = Duration.ofMinutes(5);
+    private boolean http2Enabled = true;
+    private int maxRequestsPerHost = 5;
+    private Map<String, TimeoutProfile> timeouts = new LinkedHashMap<>();
+    private ChunkedUpload chunkedUpload = new ChunkedUpload();
+
+    public HttpClientProperties() {
+        timeouts.put(DEFAULT_PROFILE, new TimeoutProfile(Duration.ofSeconds(10), Duration.ofSeconds(60), Duration.ofSeconds(60)));
+        timeouts.put(UPLOAD_PROFILE, new TimeoutProfile(Duration.ofSeconds(30), Duration.ofMinutes(10), Duration.ofMinutes(10), Duration.ofMinutes(15)));
+    }
+
+    @Data
+    public static class ChunkedUpload {
+        private DataSize chunkSize = DataSize.ofMegabytes(4);
+        private String checkpointDirectory = System.getProperty("user.home") + "/.lamisplus/patient-sync-uploads";
+    }
+
+    @Data
+    public static class TimeoutProfile {
+        private Duration connect;
+        private Duration read;
+        private Duration write;
+        /**
+         * Upper bound for the whole call, including redirects and retries on new connections; unset means none.
+         */
+        private Duration call;
+
+        public TimeoutProfile() {
+        }
+
+        public TimeoutProfile(Duration connect, Duration read, Duration write) {
+            this(connect, read, write, null);
+        }
+
+        public TimeoutProfile(Duration connect, Duration read, Duration write, Duration call) {
+            this.connect = connect;
+            this.read = read;
+            this.write = write;
+            this.call = call;
+        }
+    }
+}
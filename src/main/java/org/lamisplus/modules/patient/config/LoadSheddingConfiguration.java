@@ -0,0 +1,257 @@
+package org.lamisplus.modules.patient.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRateLimiterMetrics;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.patient.controller.exception.TooManyRequestsException;
+import org.lamisplus.modules.patient.utility.ConditionalGet;
+import org.lamisplus.modules.patient.utility.EndpointLoad;
+import org.lamisplus.modules.patient.utility.ShedLoad;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits patient API requests per {@link EndpointLoad} class with a resilience4j bulkhead and, for classes with a
+ * rate limit, a rate limiter per user. A request over its rate, or that finds a bulkhead full, is answered 429
+ * with Retry-After and never reaches the database. Conditional GETs of {@link ConditionalGet} methods skip the rate
+ * limiters but keep the bulkheads of their class. The per-user rate limiters are dropped after
+ * patient.load-shedding.rate-limiter-expiry-minutes without requests, and at most
+ * patient.load-shedding.max-rate-limiters are kept.
+ * <p>
+ * Besides its own bulkhead, every class other than {@link EndpointLoad#WRITE} takes a permit of the shared
+ * patientNonWrites bulkhead, sized to the connection pool minus patient.load-shedding.reserved-write-connections,
+ * so those connections are always left for check-in and registration writes whatever the class bulkheads allow.
+ * The instances come from the application's resilience4j registries when present, with the module defaults of
+ * {@link EndpointLoad} for instances that are not configured there.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "patient.load-shedding.enabled", havingValue = "true", matchIfMissing = true)
+public class LoadSheddingConfiguration implements WebMvcConfigurer {
+    private static final String PERMIT_ATTRIBUTE = LoadSheddingConfiguration.class.getName() + ".bulkhead";
+    private static final String NON_WRITES = "patientNonWrites";
+
+    private final ObjectProvider<BulkheadRegistry> bulkheadRegistry;
+    private final ObjectProvider<RateLimiterRegistry> rateLimiterRegistry;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final ObjectProvider<DataSource> dataSource;
+
+    private final Map<EndpointLoad, Bulkhead> bulkheads = new EnumMap<>(EndpointLoad.class);
+    private final Map<EndpointLoad, RateLimiterConfig> rateLimits = new EnumMap<>(EndpointLoad.class);
+    private Cache<String, RateLimiter> rateLimiters;
+    private Bulkhead nonWrites;
+
+    @Value("${patient.load-shedding.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    @Value("${patient.load-shedding.reserved-write-connections:3}")
+    private int reservedWriteConnections;
+
+    @Value("${patient.load-shedding.rate-limiter-expiry-minutes:10}")
+    private long rateLimiterExpiryMinutes;
+
+    @Value("${patient.load-shedding.max-rate-limiters:10000}")
+    private long maxRateLimiters;
+
+    public LoadSheddingConfiguration(ObjectProvider<BulkheadRegistry> bulkheadRegistry,
+                                     ObjectProvider<RateLimiterRegistry> rateLimiterRegistry,
+                                     ObjectProvider<MeterRegistry> meterRegistry,
+                                     ObjectProvider<DataSource> dataSource) {
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.rateLimiterRegistry = rateLimiterRegistry;
+        this.meterRegistry = meterRegistry;
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    public void init() {
+        MeterRegistry meters = meterRegistry.getIfAvailable();
+        BulkheadRegistry bulkheadInstances = bulkheadRegistry.getIfAvailable();
+        if (bulkheadInstances == null) {
+            bulkheadInstances = BulkheadRegistry.ofDefaults();
+            if (meters != null) {
+                TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadInstances).bindTo(meters);
+            }
+        }
+        RateLimiterRegistry rateLimiterInstances = rateLimiterRegistry.getIfAvailable();
+        if (rateLimiterInstances == null) {
+            rateLimiterInstances = RateLimiterRegistry.ofDefaults();
+            if (meters != null) {
+                TaggedRateLimiterMetrics.ofRateLimiterRegistry(rateLimiterInstances).bindTo(meters);
+            }
+        }
+        for (EndpointLoad load : EndpointLoad.values()) {
+            bulkheads.put(load, bulkheadInstances.bulkhead(load.getInstance(), load.defaultBulkheadConfig()));
+            // a configured instance is the per-user template; the per-user limiters are not registered, so
+            // they add no meters per user
+            RateLimiterConfig rateLimit = rateLimiterInstances.find(load.getInstance())
+                    .map(RateLimiter::getRateLimiterConfig)
+                    .orElse(load.defaultRateLimiterConfig());
+            if (rateLimit != null) {
+                rateLimits.put(load, rateLimit);
+            }
+        }
+        nonWrites = nonWritesBulkhead(bulkheadInstances);
+        rateLimiters = CacheBuilder.newBuilder()
+                .expireAfterAccess(rateLimiterExpiryMinutes, TimeUnit.MINUTES)
+                .maximumSize(maxRateLimiters)
+                .build();
+    }
+
+    private Bulkhead nonWritesBulkhead(BulkheadRegistry bulkheadInstances) {
+        DataSource pool = dataSource.getIfUnique();
+        if (!(pool instanceof HikariDataSource)) {
+            log.warn("Connection pool size unknown, no connections are reserved for patient writes");
+            return null;
+        }
+        int poolSize = ((HikariDataSource) pool).getMaximumPoolSize();
+        int maxCalls = Math.max(1, poolSize - reservedWriteConnections);
+        if (poolSize - reservedWriteConnections < 1) {
+            log.warn("A pool of {} connections cannot reserve {} for patient writes; other requests run one at a time",
+                    poolSize, reservedWriteConnections);
+        }
+        log.info("Patient requests other than writes share {} of {} connections", maxCalls, poolSize);
+        return bulkheadInstances.bulkhead(NON_WRITES, BulkheadConfig.custom()
+                .maxConcurrentCalls(maxCalls)
+                .maxWaitDuration(Duration.ofMillis(500))
+                .build());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new LoadSheddingInterceptor()).addPathPatterns("/api/v1/patient/**");
+    }
+
+    private static EndpointLoad classify(HttpServletRequest request, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            ShedLoad shedLoad = ((HandlerMethod) handler).getMethodAnnotation(ShedLoad.class);
+            if (shedLoad != null) {
+                return shedLoad.value();
+            }
+        }
+        switch (request.getMethod()) {
+            case "OPTIONS":
+                return null;
+            case "GET":
+            case "HEAD":
+                return EndpointLoad.READ;
+            default:
+                return EndpointLoad.WRITE;
+        }
+    }
+
+    /**
+     * A GET or HEAD with a validator to a method that answers it from a version query.
+     */
+    private static boolean isRevalidation(HttpServletRequest request, Object handler) {
+        return ("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()))
+                && (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null)
+                && handler instanceof HandlerMethod
+                && ((HandlerMethod) handler).hasMethodAnnotation(ConditionalGet.class);
+    }
+
+    /**
+     * The rate limiter of the current user for a class; anonymous requests share one per client address.
+     */
+    private RateLimiter rateLimiter(EndpointLoad load, HttpServletRequest request) {
+        RateLimiterConfig rateLimit = rateLimits.get(load);
+        if (rateLimit == null) {
+            return null;
+        }
+        Principal principal = request.getUserPrincipal();
+        String caller = principal != null ? principal.getName() : request.getRemoteAddr();
+        String name = load.getInstance() + ":" + caller;
+        try {
+            return rateLimiters.get(name, () -> RateLimiter.of(name, rateLimit));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("Cannot create rate limiter " + name, e.getCause());
+        }
+    }
+
+    private void shed(EndpointLoad load, String reason, long retryAfter) {
+        MeterRegistry meters = meterRegistry.getIfAvailable();
+        if (meters != null) {
+            Counter.builder("patient.requests.shed")
+                    .tag("class", load.getInstance())
+                    .tag("reason", reason)
+                    .register(meters)
+                    .increment();
+        }
+        throw new TooManyRequestsException("Too many " + load.name().toLowerCase() + " requests, retry in "
+                + retryAfter + "s", retryAfter);
+    }
+
+    private class LoadSheddingInterceptor implements HandlerInterceptor {
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            // an async dispatch (streamed export) still holds the permit of its first dispatch
+            if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+                return true;
+            }
+            EndpointLoad load = classify(request, handler);
+            if (load == null) {
+                return true;
+            }
+            RateLimiter rateLimiter = load == EndpointLoad.READ || isRevalidation(request, handler)
+                    ? null : rateLimiter(load, request);
+            if (rateLimiter != null && !rateLimiter.acquirePermission()) {
+                long refreshSeconds = rateLimiter.getRateLimiterConfig().getLimitRefreshPeriod().getSeconds();
+                shed(load, "rate", Math.max(1, refreshSeconds));
+            }
+            Bulkhead bulkhead = bulkheads.get(load);
+            if (!bulkhead.tryAcquirePermission()) {
+                shed(load, "concurrency", retryAfterSeconds);
+            }
+            if (load != EndpointLoad.WRITE && nonWrites != null && !nonWrites.tryAcquirePermission()) {
+                bulkhead.onComplete();
+                shed(load, "reserved", retryAfterSeconds);
+            }
+            request.setAttribute(PERMIT_ATTRIBUTE, load);
+            return true;
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            EndpointLoad load = (EndpointLoad) request.getAttribute(PERMIT_ATTRIBUTE);
+            if (load != null) {
+                request.removeAttribute(PERMIT_ATTRIBUTE);
+                bulkheads.get(load).onComplete();
+                if (load != EndpointLoad.WRITE && nonWrites != null) {
+                    nonWrites.onComplete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.lamisplus.modules.patient.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.lamisplus.modules.patient.service.FacilityContext;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Times every public method of the person, visit and encounter services and every PersonRepository query.
+ * <p>
+ * Meters: {@code patient.service} and {@code patient.repository} timers tagged with class, method, facility,
+ * endpoint and outcome, published as percentile histograms so that quantiles are aggregated server-side across
+ * instances; {@code patient.service.errors} counts failures by exception; {@code patient.repository.rows} counts the rows returned per query. The facility is that of the
+ * current user, looked up once per HTTP request; the endpoint is the matched request mapping, e.g.
+ * {@code GET api/v1/patient/{id}}. Both are "none" outside a request.
+ */
+@Slf4j
+@Aspect
+@Component
+@EnableAspectJAutoProxy
+public class PatientMetricsAspect {
+    private static final String FACILITY_ATTRIBUTE = PatientMetricsAspect.class.getName() + ".facility";
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final FacilityContext facilityContext;
+
+    @Value("${patient.metrics.enabled:true}")
+    private boolean enabled;
+
+    public PatientMetricsAspect(ObjectProvider<MeterRegistry> meterRegistry, FacilityContext facilityContext) {
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.facilityContext = facilityContext;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    @Around("execution(public * *(..)) && (target(org.lamisplus.modules.patient.service.PersonService) " +
+            "|| target(org.lamisplus.modules.patient.service.VisitService) " +
+            "|| target(org.lamisplus.modules.patient.service.EncounterService))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("patient.service", joinPoint.getSignature().getDeclaringType().getSimpleName(), joinPoint);
+    }
+
+    @Around("execution(public * *(..)) && target(org.lamisplus.modules.patient.repository.PersonRepository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = time("patient.repository", "PersonRepository", joinPoint);
+        if (enabled) {
+            long rows = countRows(result);
+            if (rows > 0) {
+                Counter.builder("patient.repository.rows")
+                        .tags("class", "PersonRepository", "method", joinPoint.getSignature().getName())
+                        .register(meterRegistry)
+                        .increment(rows);
+            }
+        }
+        return result;
+    }
+
+    private Object time(String name, String className, ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!enabled) {
+            return joinPoint.proceed();
+        }
+        Tags tags = Tags.of("class", className, "method", joinPoint.getSignature().getName(),
+                "facility", getFacility(), "endpoint", getEndpoint());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            outcome = "error";
+            Counter.builder(name + ".errors")
+                    .tags(tags.and("exception", e.getClass().getSimpleName()))
+                    .register(meterRegistry)
+                    .increment();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(name)
+                    .tags(tags.and("outcome", outcome))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(meterRegistry));
+        }
+    }
+
+    private String getFacility() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return NONE;
+        }
+        Object facility = attributes.getAttribute(FACILITY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (facility == null) {
+            try {
+                facility = Optional.ofNullable(facilityContext.getFacilityId())
+                        .map(String::valueOf)
+                        .orElse(NONE);
+            } catch (RuntimeException e) {
+                log.debug("no facility for metrics: {}", e.getMessage());
+                facility = NONE;
+            }
+            attributes.setAttribute(FACILITY_ATTRIBUTE, facility, RequestAttributes.SCOPE_REQUEST);
+        }
+        return (String) facility;
+    }
+
+    private static String getEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return NONE;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? NONE : request.getMethod() + " " + pattern;
+    }
+
+    private static long countRows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return result == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,93 @@
+package org.lamisplus.modules.patient.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.patient.utility.QueryCount;
+import org.lamisplus.modules.patient.utility.QueryCounter;
+import org.lamisplus.modules.patient.utility.QueryCountingStatementInspector;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Counts the statements of every patient API request and warns when a request exceeds
+ * patient.query-count.warn-threshold statements or repeats one statement patient.query-count.repeat-threshold
+ * times (a likely N+1 loop). The count per endpoint is also published as the patient.request.queries summary.
+ * Requests are only counted once Hibernate has created the {@link QueryCountingStatementInspector}; without it
+ * (hibernate.session_factory.statement_inspector not set) nothing is counted or published, rather than zeros.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "patient.query-count.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryCountConfiguration implements WebMvcConfigurer {
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${patient.query-count.warn-threshold:30}")
+    private int warnThreshold;
+
+    @Value("${patient.query-count.repeat-threshold:10}")
+    private int repeatThreshold;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new QueryCountInterceptor()).addPathPatterns("/api/v1/patient/**");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warnWhenNotInstalled() {
+        if (!QueryCounter.isInstalled()) {
+            log.warn("patient.query-count is enabled but hibernate.session_factory.statement_inspector is not {}, " +
+                    "requests are not counted", QueryCountingStatementInspector.class.getName());
+        }
+    }
+
+    private class QueryCountInterceptor implements HandlerInterceptor {
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            if (QueryCounter.isInstalled()) {
+                QueryCounter.start();
+            }
+            return true;
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            QueryCount count = QueryCounter.stop();
+            if (count == null) {
+                return;
+            }
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String endpoint = request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry != null) {
+                DistributionSummary.builder("patient.request.queries")
+                        .tags("endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .register(registry)
+                        .record(count.getStatementCount());
+            }
+            Map<String, Integer> repeated = count.getRepeatedStatements(repeatThreshold);
+            if (count.getStatementCount() > warnThreshold || !repeated.isEmpty()) {
+                log.warn("{} issued {}", endpoint, count);
+                repeated.forEach((sql, times) -> log.warn("possible N+1 in {}: {} x {}", endpoint, times, sql));
+            } else {
+                log.debug("{} issued {}", endpoint, count);
+            }
+        }
+    }
+}
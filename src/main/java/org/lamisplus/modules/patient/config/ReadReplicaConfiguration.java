@@ -0,0 +1,130 @@
+package org.lamisplus.modules.patient.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.patient.utility.ReadReplicaRouting;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Opens the read replica pool and checks its replication lag every patient.replica.check-interval-millis.
+ * While the lag is above patient.replica.max-lag-seconds, or the replica cannot be reached, read-only
+ * transactions stay on the primary. The lag is published as the patient.replica.lag gauge.
+ * Routing needs spring.jpa.open-in-view=false: with open-in-view every request binds an entity manager first,
+ * so {@link ReadReplicaRoutingAspect} keeps all of it on the primary.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "patient.replica.enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+    private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+            "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private final ObjectProvider<DataSource> dataSource;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${patient.replica.url}")
+    private String url;
+
+    @Value("${patient.replica.username:}")
+    private String username;
+
+    @Value("${patient.replica.password:}")
+    private String password;
+
+    @Value("${patient.replica.max-pool-size:5}")
+    private int maxPoolSize;
+
+    @Value("${patient.replica.max-lag-seconds:10}")
+    private double maxLagSeconds;
+
+    @Value("${spring.jpa.open-in-view:true}")
+    private boolean openInView;
+
+    private HikariDataSource replica;
+    private volatile double lagSeconds = Double.NaN;
+
+    public ReadReplicaConfiguration(ObjectProvider<DataSource> dataSource, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.dataSource = dataSource;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("patient-replica");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maxPoolSize);
+        config.setReadOnly(true);
+        // a replica that is down at startup must not stop the application
+        config.setInitializationFailTimeout(-1);
+        replica = new HikariDataSource(config);
+
+        // only needed when Hibernate does not pass its DataSource to the connection provider
+        ReadReplicaRouting.setPrimary(dataSource.getIfUnique());
+        ReadReplicaRouting.setReplica(replica);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("patient.replica.lag", this, configuration -> configuration.lagSeconds)
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+        checkLag();
+        if (!ReadReplicaRouting.isProviderInstalled()) {
+            log.warn("patient.replica.enabled is set but hibernate.connection.provider_class is not {}; " +
+                    "all queries use the primary", "org.lamisplus.modules.patient.utility.ReadReplicaConnectionProvider");
+        }
+        if (openInView) {
+            log.warn("patient.replica.enabled is set but spring.jpa.open-in-view is on; requests hold a primary " +
+                    "entity manager, so no patient query is routed to the replica");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${patient.replica.check-interval-millis:5000}",
+            initialDelayString = "${patient.replica.check-interval-millis:5000}")
+    public void checkLag() {
+        boolean available;
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+            resultSet.next();
+            lagSeconds = resultSet.getDouble(1);
+            available = lagSeconds <= maxLagSeconds;
+            if (!available && ReadReplicaRouting.isReplicaAvailable()) {
+                log.warn("Read replica is {}s behind (limit {}s), using the primary", lagSeconds, maxLagSeconds);
+            }
+        } catch (Exception e) {
+            lagSeconds = Double.NaN;
+            available = false;
+            if (ReadReplicaRouting.isReplicaAvailable()) {
+                log.warn("Read replica check failed, using the primary: {}", e.getMessage());
+            }
+        }
+        if (available && !ReadReplicaRouting.isReplicaAvailable()) {
+            log.info("Read replica is {}s behind, routing read-only transactions to it", lagSeconds);
+        }
+        ReadReplicaRouting.setReplicaAvailable(available);
+    }
+
+    @PreDestroy
+    public void close() {
+        ReadReplicaRouting.setReplica(null);
+        replica.close();
+    }
+}
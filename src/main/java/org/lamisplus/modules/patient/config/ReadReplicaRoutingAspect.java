@@ -0,0 +1,45 @@
+package org.lamisplus.modules.patient.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.lamisplus.modules.patient.utility.ReadReplicaRouting;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Marks calls to {@code @Transactional(readOnly = true)} patient service methods as replica-eligible before
+ * the transaction opens its connection. Ordered ahead of the transaction interceptor for that reason.
+ * Only a transaction with its own entity manager is routed. A read-only method that joins a running
+ * transaction, or runs while an entity manager is bound to the request (open-in-view), stays on the primary.
+ * Otherwise a held replica connection could later be used for writes.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "patient.replica.enabled", havingValue = "true")
+public class ReadReplicaRoutingAspect {
+
+    @Around("execution(public * org.lamisplus.modules.patient.service..*(..)) && @annotation(transactional)")
+    public Object route(ProceedingJoinPoint joinPoint, Transactional transactional) throws Throwable {
+        boolean readOnly = transactional.readOnly()
+                && (ReadReplicaRouting.isReadOnly() || startsOwnTransaction());
+        Boolean previous = ReadReplicaRouting.set(readOnly);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ReadReplicaRouting.restore(previous);
+        }
+    }
+
+    private static boolean startsOwnTransaction() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.getResourceMap().values().stream()
+                .noneMatch(EntityManagerHolder.class::isInstance);
+    }
+}
@@ -0,0 +1,96 @@
+package org.lamisplus.modules.patient.config;
+
+import org.lamisplus.modules.patient.utility.SyncPayloadCodec;
+import org.lamisplus.modules.patient.utility.SyncPayloadFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lets the sync endpoints (change feed, change outbox and import) answer in Smile or CBOR when the client asks
+ * for it in the Accept header, and accept request bodies in those formats; JSON stays the default.
+ * The converters decline every other request, so the host application's endpoints keep their own formats.
+ */
+@Configuration
+public class SyncPayloadConfiguration implements WebMvcConfigurer {
+    static final List<String> SYNC_PATHS = Arrays.asList(
+            "/api/v1/patient/changes/", "/api/v1/patient/change-outbox/", "/api/v1/patient/import/");
+
+    @Bean
+    public SyncPayloadCodec syncPayloadCodec(@Value("${patient.sync.payload-format:json}") String format) {
+        return new SyncPayloadCodec(SyncPayloadFormat.fromName(format));
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new SyncSmileConverter());
+        converters.add(new SyncCborConverter());
+    }
+
+    static boolean isSyncRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return SYNC_PATHS.stream().anyMatch(path::startsWith);
+    }
+
+    private static final class SyncSmileConverter extends MappingJackson2SmileHttpMessageConverter {
+        @Override
+        public boolean canRead(Class<?> clazz, MediaType mediaType) {
+            return isSyncRequest() && super.canRead(clazz, mediaType);
+        }
+
+        @Override
+        public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+            return isSyncRequest() && super.canRead(type, contextClass, mediaType);
+        }
+
+        @Override
+        public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+            return isSyncRequest() && super.canWrite(clazz, mediaType);
+        }
+
+        @Override
+        public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+            return isSyncRequest() && super.canWrite(type, clazz, mediaType);
+        }
+    }
+
+    private static final class SyncCborConverter extends MappingJackson2CborHttpMessageConverter {
+        @Override
+        public boolean canRead(Class<?> clazz, MediaType mediaType) {
+            return isSyncRequest() && super.canRead(clazz, mediaType);
+        }
+
+        @Override
+        public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+            return isSyncRequest() && super.canRead(type, contextClass, mediaType);
+        }
+
+        @Override
+        public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+            return isSyncRequest() && super.canWrite(clazz, mediaType);
+        }
+
+        @Override
+        public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+            return isSyncRequest() && super.canWrite(type, clazz, mediaType);
+        }
+    }
+}
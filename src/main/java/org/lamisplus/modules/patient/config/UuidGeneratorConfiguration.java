@@ -0,0 +1,26 @@
+package org.lamisplus.modules.patient.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.patient.utility.PatientUuid;
+import org.lamisplus.modules.patient.utility.TimeOrderedUuidGenerator;
+import org.lamisplus.modules.patient.utility.UuidGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.UUID;
+
+@Configuration
+@Slf4j
+public class UuidGeneratorConfiguration {
+
+    @Bean
+    public UuidGenerator patientUuidGenerator(@Value("${patient.uuid.generator:time-ordered}") String strategy) {
+        UuidGenerator uuidGenerator = "random".equalsIgnoreCase(strategy)
+                ? UUID::randomUUID
+                : new TimeOrderedUuidGenerator();
+        log.info("patient uuid generator {}", strategy);
+        PatientUuid.setGenerator(uuidGenerator);
+        return uuidGenerator;
+    }
+}
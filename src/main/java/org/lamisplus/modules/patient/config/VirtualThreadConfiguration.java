@@ -0,0 +1,54 @@
+package org.lamisplus.modules.patient.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.lamisplus.modules.patient.utility.VirtualThreads;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * With patient.virtual-threads.enabled on JDK 21+, hands every Tomcat request to its own virtual thread, so a
+ * request blocked on a JDBC query no longer holds one of the connector's platform threads. The web server is
+ * created by the host application before the module starts, so the connector executor is swapped once the
+ * server is up; the previous pool finishes its in-flight requests and is then shut down.
+ * Concurrency is then bounded by the JDBC connection pool rather than by the thread count.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+@ConditionalOnProperty(name = "patient.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        if (!VirtualThreads.isSupported()) {
+            log.warn("patient.virtual-threads.enabled is set but Java {} has no virtual threads; keeping platform threads",
+                    System.getProperty("java.version"));
+            return;
+        }
+        if (!(event.getWebServer() instanceof TomcatWebServer)) {
+            return;
+        }
+        for (Connector connector : ((TomcatWebServer) event.getWebServer()).getTomcat().getService().findConnectors()) {
+            ProtocolHandler protocolHandler = connector.getProtocolHandler();
+            if (!(protocolHandler instanceof AbstractProtocol)) {
+                continue;
+            }
+            Executor previous = protocolHandler.getExecutor();
+            ((AbstractProtocol<?>) protocolHandler).setExecutor(VirtualThreads.perTaskExecutor("http-vt-" + connector.getPort() + "-"));
+            if (previous instanceof ExecutorService) {
+                ((ExecutorService) previous).shutdown();
+            }
+            log.info("connector on port {} now runs requests on virtual threads", connector.getPort());
+        }
+    }
+}
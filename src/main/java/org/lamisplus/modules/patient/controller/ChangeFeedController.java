@@ -0,0 +1,62 @@
+package org.lamisplus.modules.patient.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.patient.domain.dto.ChangeFeedBatch;
+import org.lamisplus.modules.patient.domain.entity.Encounter;
+import org.lamisplus.modules.patient.domain.entity.Person;
+import org.lamisplus.modules.patient.domain.entity.Visit;
+import org.lamisplus.modules.patient.service.ChangeFeedService;
+import org.lamisplus.modules.patient.service.FacilityContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/patient/changes")
+public class ChangeFeedController {
+
+    private final ChangeFeedService changeFeedService;
+    private final FacilityContext facilityContext;
+
+    @GetMapping("/persons")
+    public ResponseEntity<ChangeFeedBatch<Person>> getPersonChanges(
+            @RequestParam(required = false) Long facilityId,
+            @RequestParam(required = false) String resumeToken,
+            @RequestParam(required = false) Integer batchSize,
+            @RequestParam(required = false) Long settleSeconds) {
+        return ResponseEntity.ok (changeFeedService.getPersonChanges (callerFacility (facilityId), resumeToken, batchSize, settleSeconds));
+    }
+
+    @GetMapping("/visits")
+    public ResponseEntity<ChangeFeedBatch<Visit>> getVisitChanges(
+            @RequestParam(required = false) Long facilityId,
+            @RequestParam(required = false) String resumeToken,
+            @RequestParam(required = false) Integer batchSize,
+            @RequestParam(required = false) Long settleSeconds) {
+        return ResponseEntity.ok (changeFeedService.getVisitChanges (callerFacility (facilityId), resumeToken, batchSize, settleSeconds));
+    }
+
+    @GetMapping("/encounters")
+    public ResponseEntity<ChangeFeedBatch<Encounter>> getEncounterChanges(
+            @RequestParam(required = false) Long facilityId,
+            @RequestParam(required = false) String resumeToken,
+            @RequestParam(required = false) Integer batchSize,
+            @RequestParam(required = false) Long settleSeconds) {
+        return ResponseEntity.ok (changeFeedService.getEncounterChanges (callerFacility (facilityId), resumeToken, batchSize, settleSeconds));
+    }
+
+    /**
+     * The feed is limited to the caller's facility; asking for another one is refused.
+     */
+    private Long callerFacility(Long facilityId) {
+        Long current = facilityContext.getFacilityId ();
+        if (facilityId != null && !facilityId.equals (current)) {
+            throw new AccessDeniedException ("Change feed of facility " + facilityId + " is not available to this user");
+        }
+        return current;
+    }
+}
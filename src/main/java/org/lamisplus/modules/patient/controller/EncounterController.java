@@ -5,6 +5,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.lamisplus.modules.patient.domain.dto.EncounterRequestDto;
 import org.lamisplus.modules.patient.domain.dto.EncounterResponseDto;
 import org.lamisplus.modules.patient.service.EncounterService;
+import org.lamisplus.modules.patient.utility.EndpointLoad;
+import org.lamisplus.modules.patient.utility.ShedLoad;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,6 +25,7 @@ public class EncounterController {
         return ResponseEntity.ok (encounterService.registerEncounter (encounterRequestDto));
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping("/encounter")
     public ResponseEntity<List<EncounterResponseDto>> getAllEncounter() {
         return ResponseEntity.ok (encounterService.getAllEncounters ());
@@ -39,8 +42,10 @@ public class EncounterController {
     }
 
     @GetMapping("/encounter/person/{personId}")
-    public ResponseEntity<List<EncounterResponseDto>> getPersonEncounter(@PathVariable("personId") Long personId) {
-        return ResponseEntity.ok (encounterService.getAllEncounterByPerson (personId));
+    public ResponseEntity<List<EncounterResponseDto>> getPersonEncounter(
+            @PathVariable("personId") Long personId,
+            @RequestParam(defaultValue = "false") boolean fullHistory) {
+        return ResponseEntity.ok (encounterService.getAllEncounterByPerson (personId, fullHistory));
     }
 
     @PutMapping(value = "/encounter/{id}")
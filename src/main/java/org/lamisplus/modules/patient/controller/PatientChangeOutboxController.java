@@ -0,0 +1,53 @@
+package org.lamisplus.modules.patient.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutboxConsumer;
+import org.lamisplus.modules.patient.service.FacilityContext;
+import org.lamisplus.modules.patient.service.PatientChangeOutboxService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/patient/change-outbox")
+public class PatientChangeOutboxController {
+
+    private final PatientChangeOutboxService changeOutboxService;
+    private final FacilityContext facilityContext;
+
+    @PostMapping("/{consumer}")
+    public ResponseEntity<PatientChangeOutboxConsumer> registerConsumer(@PathVariable("consumer") String consumer) {
+        return ResponseEntity.ok (changeOutboxService.register (consumer));
+    }
+
+    @GetMapping("/{consumer}")
+    public ResponseEntity<List<PatientChangeOutbox>> readChanges(
+            @PathVariable("consumer") String consumer,
+            @RequestParam(required = false) Long facilityId,
+            @RequestParam(required = false) Integer batchSize) {
+        return ResponseEntity.ok (changeOutboxService.read (consumer, callerFacility (facilityId), batchSize));
+    }
+
+    @PostMapping("/{consumer}/acknowledge")
+    public ResponseEntity<Void> acknowledgeChanges(
+            @PathVariable("consumer") String consumer,
+            @RequestParam Long sequenceId) {
+        changeOutboxService.acknowledge (consumer, sequenceId);
+        return ResponseEntity.noContent ().build ();
+    }
+
+    /**
+     * The outbox is limited to the caller's facility; asking for another one is refused.
+     */
+    private Long callerFacility(Long facilityId) {
+        Long current = facilityContext.getFacilityId ();
+        if (facilityId != null && !facilityId.equals (current)) {
+            throw new AccessDeniedException ("Change outbox of facility " + facilityId + " is not available to this user");
+        }
+        return current;
+    }
+}
@@ -5,22 +5,34 @@ import lombok.extern.slf4j.Slf4j;
 import org.lamisplus.modules.patient.domain.dto.PersonDto;
 import org.lamisplus.modules.patient.domain.dto.PersonMetaDataDto;
 import org.lamisplus.modules.patient.domain.dto.PersonResponseDto;
+import org.lamisplus.modules.patient.domain.dto.RegistrationValidationRequest;
+import org.lamisplus.modules.patient.domain.dto.RegistrationValidationResponse;
+import org.lamisplus.modules.patient.domain.dto.ResourceVersion;
 import org.lamisplus.modules.patient.domain.entity.PatientCheckPostService;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.repository.PatientCheckPostServiceRepository;
 import org.lamisplus.modules.patient.service.PersonService;
 import org.lamisplus.modules.patient.service.ValidationService;
+import org.lamisplus.modules.patient.utility.ConditionalGet;
+import org.lamisplus.modules.patient.utility.EndpointLoad;
+import org.lamisplus.modules.patient.utility.HttpCaching;
+import org.lamisplus.modules.patient.utility.ShedLoad;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.Map;
 
 @Slf4j
@@ -34,11 +46,18 @@ public class PatientController {
     private final ValidationService validationService;
     private final PatientCheckPostServiceRepository patientCheckPostServiceRepository;
 
+    @Value("${patient.http-cache.reference-max-age:3600}")
+    private long referenceMaxAge;
+
+    @Value("${patient.http-cache.stats-max-age:60}")
+    private long statsMaxAge;
+
     @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<PersonResponseDto> createPatient(@RequestBody PersonDto patient) {
         return ResponseEntity.ok(personService.createPerson(patient));
     }
 
+    @ShedLoad(EndpointLoad.SEARCH)
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<PersonMetaDataDto> getAllPatients(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -48,9 +67,12 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ConditionalGet
     @GetMapping(value = "/{id}")
-    public ResponseEntity<PersonResponseDto> getPatient(@PathVariable("id") Long id) {
-        return ResponseEntity.ok(personService.getPersonById(id));
+    public ResponseEntity<PersonResponseDto> getPatient(@PathVariable("id") Long id, WebRequest request) {
+        Optional<ResourceVersion> version = personService.getPersonVersion(id);
+        return HttpCaching.<PersonResponseDto>notModified(request, version, HttpCaching.REVALIDATE)
+                .orElseGet(() -> HttpCaching.ok(version, HttpCaching.REVALIDATE).body(personService.getPersonById(id)));
     }
 
     @PutMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -74,9 +96,15 @@ public class PatientController {
 
     @GetMapping(value = "/post-service")
     public ResponseEntity<List<PatientCheckPostService>> getPatientService() {
-        return ResponseEntity.ok(patientCheckPostServiceRepository.findAll());
+        // a handful of rows, so the ETag is taken from the rows and Spring answers 304 itself
+        List<PatientCheckPostService> services = patientCheckPostServiceRepository.findAll();
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(referenceMaxAge, TimeUnit.SECONDS).cachePrivate())
+                .eTag(HttpCaching.eTag(services.size(), services.hashCode()))
+                .body(services);
     }
 
+    @ShedLoad(EndpointLoad.SEARCH)
     @GetMapping(value = "/checked-in-by-service/{serviceCode}")
     public ResponseEntity<List<PersonResponseDto>> getCheckedInPatientByService(@PathVariable("serviceCode") String serviceCode) {
         return ResponseEntity.ok(personService.getCheckedInPersonsByServiceCodeAndVisitId(serviceCode));
@@ -89,6 +117,11 @@ public class PatientController {
     }
 
 
+    @PostMapping("/validate/registration")
+    public ResponseEntity<RegistrationValidationResponse> validateRegistration(@RequestBody RegistrationValidationRequest request) {
+        return ResponseEntity.ok(validationService.validateRegistration(request));
+    }
+
     @PostMapping("/exist/nin-number/{nin}")
     public boolean isNinNumberExisting(@PathVariable("nin") String nin) {
         return personService.isNINExisting(nin);
@@ -128,6 +161,7 @@ public class PatientController {
 //        return new ResponseEntity<> (personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
 //    }
 
+    @ShedLoad(EndpointLoad.SEARCH)
     @GetMapping(value = "/get-all-patient-pageable", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<PersonMetaDataDto> getAllPatientsPageable(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -138,6 +172,7 @@ public class PatientController {
 
     }
 
+    @ShedLoad(EndpointLoad.SEARCH)
     @GetMapping(value = "/checked-in")
     public ResponseEntity<PersonMetaDataDto> listOfCheckedinPersons(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -147,6 +182,7 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping(value = "/get-duplicate-hospital_numbers")
     public ResponseEntity<PersonMetaDataDto> getDuplicateHospitalNumbers(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -156,6 +192,7 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.SEARCH)
     @GetMapping(value = "/get-patient-by-search-param", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<PersonMetaDataDto> getPatientsBySearchParam(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -165,6 +202,7 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping(value = "/getall-patients-without-biometric")
     public ResponseEntity<PersonMetaDataDto> getAllPatientWithoutBiomentic(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -175,6 +213,7 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping(value = "/getall-patients-with-biometric")
     public ResponseEntity<PersonMetaDataDto> getAllPatientWithBiomentic(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -185,6 +224,7 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping(value = "/getall-patients-with-no-biometric")
     public ResponseEntity<PersonMetaDataDto> getAllPatientWithNoBiomentic(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -195,6 +235,7 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping(value = "/getall-patients-with-no-recapture")
     public ResponseEntity<PersonMetaDataDto> getAllPatientWithNoRecapture(
             @RequestParam(defaultValue = "*") String searchParam,
@@ -205,15 +246,23 @@ public class PatientController {
         return new ResponseEntity<>(personMetaDataDto, new HttpHeaders(), HttpStatus.OK);
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
+    @ConditionalGet
     @GetMapping(value = "/count-by-sex")
-    public ResponseEntity<List<Map<String, Object>>> getCountRegistrationsBySex() {
-        List<Map<String, Object>> result = personService.countRegistrationsBySex();
-        return new ResponseEntity<>(result, HttpStatus.OK);
+    public ResponseEntity<List<Map<String, Object>>> getCountRegistrationsBySex(WebRequest request) {
+        Optional<ResourceVersion> version = personService.getRegistrationStatsVersion();
+        CacheControl cacheControl = CacheControl.maxAge(statsMaxAge, TimeUnit.SECONDS).cachePrivate();
+        return HttpCaching.<List<Map<String, Object>>>notModified(request, version, cacheControl)
+                .orElseGet(() -> HttpCaching.ok(version, cacheControl).body(personService.countRegistrationsBySex()));
     }
+    @ShedLoad(EndpointLoad.REPORT)
+    @ConditionalGet
     @GetMapping(value = "/count-by-year-and-sex")
-    public ResponseEntity<List<Map<String, Object>>> getCountRegistrationsByYearAndSex() {
-        List<Map<String, Object>> result = personService.countRegistrationsByYearAndSex();
-        return new ResponseEntity<>(result, HttpStatus.OK);
+    public ResponseEntity<List<Map<String, Object>>> getCountRegistrationsByYearAndSex(WebRequest request) {
+        Optional<ResourceVersion> version = personService.getRegistrationStatsVersion();
+        CacheControl cacheControl = CacheControl.maxAge(statsMaxAge, TimeUnit.SECONDS).cachePrivate();
+        return HttpCaching.<List<Map<String, Object>>>notModified(request, version, cacheControl)
+                .orElseGet(() -> HttpCaching.ok(version, cacheControl).body(personService.countRegistrationsByYearAndSex()));
     }
 
 }
@@ -0,0 +1,79 @@
+package org.lamisplus.modules.patient.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.patient.domain.dto.BulkImportStats;
+import org.lamisplus.modules.patient.service.AdminAccess;
+import org.lamisplus.modules.patient.service.FacilityContext;
+import org.lamisplus.modules.patient.service.PatientCopyService;
+import org.lamisplus.modules.patient.utility.EndpointLoad;
+import org.lamisplus.modules.patient.utility.ShedLoad;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/patient/copy")
+public class PatientCopyController {
+
+    private final PatientCopyService copyService;
+    private final AdminAccess adminAccess;
+    private final FacilityContext facilityContext;
+
+    /**
+     * Exports the caller's facility unless another facility, or all of them, is asked for.
+     * Access is checked here because the body is streamed after this method has returned. The export itself runs
+     * on the export executor and is refused with 503 when that is busy.
+     */
+    @ShedLoad(EndpointLoad.REPORT)
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTables(
+            @RequestParam(required = false) Long facilityId,
+            @RequestParam(defaultValue = "false") boolean allFacilities,
+            @RequestParam(defaultValue = PatientCopyService.CSV) String format) {
+        adminAccess.check ("Patient table export");
+        if (facilityId == null && !allFacilities) {
+            facilityId = facilityContext.getFacilityId ();
+        }
+        Long exportedFacilityId = facilityId;
+        String fileName = "patient-export" + (facilityId != null ? "-" + facilityId : "") + ".zip";
+        CompletableFuture<OutputStream> output = new CompletableFuture<> ();
+        CompletableFuture<Void> export = copyService.exportTablesAsync (exportedFacilityId, format, output);
+        return ResponseEntity.ok ()
+                .header (HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType (MediaType.parseMediaType ("application/zip"))
+                .body (outputStream -> awaitExport (export, output, outputStream));
+    }
+
+    private static void awaitExport(CompletableFuture<Void> export, CompletableFuture<OutputStream> output,
+                                    OutputStream outputStream) throws IOException {
+        output.complete (outputStream);
+        try {
+            export.get ();
+        } catch (InterruptedException e) {
+            export.cancel (true);
+            Thread.currentThread ().interrupt ();
+            throw new IOException ("Export interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException ("Export failed", e.getCause ());
+        }
+    }
+
+    @ShedLoad(EndpointLoad.REPORT)
+    @PostMapping(value = "/import", consumes = "application/zip")
+    public ResponseEntity<List<BulkImportStats>> importTables(
+            @RequestParam(defaultValue = PatientCopyService.CSV) String format,
+            HttpServletRequest request) throws IOException {
+        adminAccess.check ("Patient table import");
+        return ResponseEntity.ok (copyService.importTables (format, request.getInputStream ()));
+    }
+}
@@ -0,0 +1,43 @@
+package org.lamisplus.modules.patient.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.patient.domain.dto.BulkImportStats;
+import org.lamisplus.modules.patient.domain.dto.EncounterImportDto;
+import org.lamisplus.modules.patient.domain.dto.PersonImportDto;
+import org.lamisplus.modules.patient.domain.dto.VisitImportDto;
+import org.lamisplus.modules.patient.service.PatientBulkImportService;
+import org.lamisplus.modules.patient.utility.EndpointLoad;
+import org.lamisplus.modules.patient.utility.ShedLoad;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/patient/import")
+public class PatientImportController {
+
+    private final PatientBulkImportService bulkImportService;
+
+    @ShedLoad(EndpointLoad.REPORT)
+    @PostMapping("/persons")
+    public ResponseEntity<List<BulkImportStats>> importPersons(@RequestBody List<PersonImportDto> persons) {
+        return ResponseEntity.ok (bulkImportService.importPersons (persons));
+    }
+
+    @ShedLoad(EndpointLoad.REPORT)
+    @PostMapping("/visits")
+    public ResponseEntity<List<BulkImportStats>> importVisits(@RequestBody List<VisitImportDto> visits) {
+        return ResponseEntity.ok (bulkImportService.importVisits (visits));
+    }
+
+    @ShedLoad(EndpointLoad.REPORT)
+    @PostMapping("/encounters")
+    public ResponseEntity<List<BulkImportStats>> importEncounters(@RequestBody List<EncounterImportDto> encounters) {
+        return ResponseEntity.ok (bulkImportService.importEncounters (encounters));
+    }
+}
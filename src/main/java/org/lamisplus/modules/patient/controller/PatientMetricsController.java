@@ -0,0 +1,84 @@
+package org.lamisplus.modules.patient.controller;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.patient.config.PatientMetricsAspect;
+import org.lamisplus.modules.patient.domain.dto.TimerSummaryDto;
+import org.lamisplus.modules.patient.service.AdminAccess;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Service and repository timings, slowest in total first, for finding the queries that cost the most.
+ * Restricted to administrators and to the module's own patient.* meters.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/patient/metrics")
+public class PatientMetricsController {
+    private static final String METER_PREFIX = "patient.";
+
+    private final PatientMetricsAspect patientMetricsAspect;
+    private final AdminAccess adminAccess;
+
+    @GetMapping
+    public ResponseEntity<List<TimerSummaryDto>> getTimers(
+            @RequestParam(defaultValue = "patient.repository") String name,
+            @RequestParam(defaultValue = "50") int limit) {
+        adminAccess.check("Patient metrics");
+        if (!name.startsWith(METER_PREFIX)) {
+            throw new IllegalArgumentException("Only " + METER_PREFIX + "* timers can be read here");
+        }
+        List<TimerSummaryDto> timers = patientMetricsAspect.getMeterRegistry().find(name).timers().stream()
+                .map(PatientMetricsController::summarize)
+                .sorted(Comparator.comparingDouble(TimerSummaryDto::getTotalMillis).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok (timers);
+    }
+
+    private static TimerSummaryDto summarize(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        TimerSummaryDto summary = new TimerSummaryDto();
+        summary.setName(timer.getId().getName());
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (Tag tag : timer.getId().getTags()) {
+            tags.put(tag.getKey(), tag.getValue());
+        }
+        summary.setTags(tags);
+        summary.setCount(snapshot.count());
+        summary.setTotalMillis(snapshot.total(TimeUnit.MILLISECONDS));
+        summary.setMeanMillis(snapshot.mean(TimeUnit.MILLISECONDS));
+        summary.setMaxMillis(snapshot.max(TimeUnit.MILLISECONDS));
+        summary.setP50Millis(percentile(snapshot, 0.5));
+        summary.setP95Millis(percentile(snapshot, 0.95));
+        summary.setP99Millis(percentile(snapshot, 0.99));
+        return summary;
+    }
+
+    /**
+     * Upper bound of the first histogram bucket holding the given share of the samples, or null without samples.
+     */
+    private static Double percentile(HistogramSnapshot snapshot, double percentile) {
+        double rank = percentile * snapshot.count();
+        for (CountAtBucket bucket : snapshot.histogramCounts()) {
+            if (snapshot.count() > 0 && bucket.count() >= rank) {
+                return bucket.bucket(TimeUnit.MILLISECONDS);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package org.lamisplus.modules.patient.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.patient.domain.dto.HibernateStatisticsDto;
+import org.lamisplus.modules.patient.domain.dto.SlowQueryDto;
+import org.lamisplus.modules.patient.service.QueryDiagnosticsService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/patient/diagnostics")
+public class QueryDiagnosticsController {
+    private final QueryDiagnosticsService queryDiagnosticsService;
+
+    @GetMapping("/statistics")
+    public ResponseEntity<HibernateStatisticsDto> getStatistics(@RequestParam(defaultValue = "50") int maxQueries) {
+        return ResponseEntity.ok (queryDiagnosticsService.getHibernateStatistics(maxQueries));
+    }
+
+    @GetMapping("/slow-queries")
+    public ResponseEntity<List<SlowQueryDto>> getSlowQueries() {
+        return ResponseEntity.ok (queryDiagnosticsService.getSlowQueries());
+    }
+
+    @PostMapping("/reset")
+    public ResponseEntity<Void> reset() {
+        queryDiagnosticsService.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -5,10 +5,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.lamisplus.modules.patient.domain.dto.*;
 import org.lamisplus.modules.patient.domain.entity.Visit;
 import org.lamisplus.modules.patient.service.VisitService;
+import org.lamisplus.modules.patient.utility.ConditionalGet;
+import org.lamisplus.modules.patient.utility.EndpointLoad;
+import org.lamisplus.modules.patient.utility.HttpCaching;
+import org.lamisplus.modules.patient.utility.ShedLoad;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
+import java.util.Optional;
 
 @Slf4j
 @RestController
@@ -22,19 +28,25 @@ public class VisitController {
         return ResponseEntity.ok (visitService.createVisit (visitDto));
     }
 
+    @ShedLoad(EndpointLoad.REPORT)
     @GetMapping
     public ResponseEntity<List<VisitDto>> getAllVisit() {
         return ResponseEntity.ok (visitService.getAllVisit ());
     }
 
+    @ConditionalGet
     @GetMapping("/{id}")
-    public ResponseEntity<VisitDto> getVisit(@PathVariable("id") Long id) {
-        return ResponseEntity.ok (visitService.getVisitById (id));
+    public ResponseEntity<VisitDto> getVisit(@PathVariable("id") Long id, WebRequest request) {
+        Optional<ResourceVersion> version = visitService.getVisitVersion (id);
+        return HttpCaching.<VisitDto>notModified (request, version, HttpCaching.REVALIDATE)
+                .orElseGet (() -> HttpCaching.ok (version, HttpCaching.REVALIDATE).body (visitService.getVisitById (id)));
     }
 
     @GetMapping("/visit-by-patient/{personId}")
-    public ResponseEntity<List<VisitDetailDto>> getPersonVisitDetail(@PathVariable("personId") Long personId) {
-        return ResponseEntity.ok (visitService.getVisitWithEncounterDetails (personId));
+    public ResponseEntity<List<VisitDetailDto>> getPersonVisitDetail(
+            @PathVariable("personId") Long personId,
+            @RequestParam(defaultValue = "false") boolean fullHistory) {
+        return ResponseEntity.ok (visitService.getVisitWithEncounterDetails (personId, fullHistory));
     }
 
     @PutMapping("/checkout/{visitId}")
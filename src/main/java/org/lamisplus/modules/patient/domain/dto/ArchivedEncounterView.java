@@ -0,0 +1,26 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row of patient_encounter_history joined to its patient_visit_history visit.
+ */
+public interface ArchivedEncounterView {
+    Long getId();
+
+    Long getFacilityId();
+
+    LocalDateTime getEncounterDate();
+
+    String getUuid();
+
+    String getServiceCode();
+
+    String getStatus();
+
+    Long getVisitId();
+
+    LocalDateTime getCheckInDate();
+
+    LocalDateTime getCheckOutDate();
+}
@@ -0,0 +1,47 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class BulkImportStats implements Serializable {
+    private static final int MAX_REJECTIONS = 100;
+
+    private String entity;
+    private int batch;
+    private int received;
+    private int written;
+    private int skippedStale;
+    private int rejectedMissingReference;
+    private int rejectedInvalid;
+    private long elapsedMillis;
+    // why rows were rejected, for the first MAX_REJECTIONS rejected rows of the batch
+    private List<String> rejections = new ArrayList<>();
+
+    public BulkImportStats(String entity, int batch, int received) {
+        this.entity = entity;
+        this.batch = batch;
+        this.received = received;
+    }
+
+    public void rejectInvalid(String reason) {
+        rejectedInvalid++;
+        addRejection(reason);
+    }
+
+    public void rejectMissingReference(String reason) {
+        rejectedMissingReference++;
+        addRejection(reason);
+    }
+
+    private void addRejection(String reason) {
+        if (rejections.size() < MAX_REJECTIONS) {
+            rejections.add(reason);
+        }
+    }
+}
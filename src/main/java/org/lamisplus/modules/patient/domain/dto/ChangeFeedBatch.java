@@ -0,0 +1,17 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeFeedBatch<T> implements Serializable {
+    private List<T> items;
+    private String resumeToken;
+    private boolean hasMore;
+}
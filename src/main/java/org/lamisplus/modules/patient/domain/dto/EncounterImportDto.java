@@ -0,0 +1,24 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class EncounterImportDto implements Serializable {
+    private String uuid;
+    private LocalDateTime createdDate;
+    private String createdBy;
+    private LocalDateTime lastModifiedDate;
+    private String lastModifiedBy;
+    private Long facilityId;
+    private LocalDateTime encounterDate;
+    private String personUuid;
+    private String visitUuid;
+    private String serviceCode;
+    private String status;
+    private Integer archived;
+}
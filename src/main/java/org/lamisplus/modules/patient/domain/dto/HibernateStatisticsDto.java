@@ -0,0 +1,45 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class HibernateStatisticsDto implements Serializable {
+    private boolean enabled;
+    private Instant since;
+    private long sessionOpenCount;
+    private long transactionCount;
+    private long connectCount;
+    private long prepareStatementCount;
+    private long flushCount;
+    private long entityLoadCount;
+    private long entityFetchCount;
+    private long collectionLoadCount;
+    private long collectionFetchCount;
+    private long queryExecutionCount;
+    private long queryExecutionMaxTime;
+    private String queryExecutionMaxTimeQueryString;
+    private long secondLevelCacheHitCount;
+    private long secondLevelCacheMissCount;
+    /**
+     * Per-query statistics, highest total time first.
+     */
+    private List<QueryStatistics> queries = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    public static class QueryStatistics implements Serializable {
+        private String query;
+        private long executionCount;
+        private long executionRowCount;
+        private long executionAvgTime;
+        private long executionMaxTime;
+        private long executionTotalTime;
+    }
+}
@@ -0,0 +1,47 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class PersonImportDto implements Serializable {
+    private String uuid;
+    private LocalDateTime createdDate;
+    private String createdBy;
+    private LocalDateTime lastModifiedDate;
+    private String lastModifiedBy;
+    private Long facilityId;
+    private Boolean active;
+    private JsonNode contactPoint;
+    private JsonNode address;
+    private JsonNode gender;
+    private JsonNode identifier;
+    private Boolean deceased;
+    private LocalDateTime deceasedDateTime;
+    private JsonNode maritalStatus;
+    private JsonNode employmentStatus;
+    private JsonNode education;
+    private String sex;
+    private JsonNode organization;
+    private JsonNode contact;
+    private LocalDate dateOfBirth;
+    private LocalDate dateOfRegistration;
+    private Integer archived;
+    private String ninNumber;
+    private String emrId;
+    private String firstName;
+    private String surname;
+    private String otherName;
+    private String hospitalNumber;
+    private Boolean isDateOfBirthEstimated;
+    private String fullName;
+    private String reason;
+    private String latitude;
+    private String longitude;
+}
@@ -0,0 +1,24 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Person of the facility sharing the hospital number, NIN or name of a registration being validated.
+ */
+public interface RegistrationConflictView {
+    Long getId();
+
+    String getUuid();
+
+    String getHospitalNumber();
+
+    String getNinNumber();
+
+    String getFirstName();
+
+    String getSurname();
+
+    String getSex();
+
+    LocalDate getDateOfBirth();
+}
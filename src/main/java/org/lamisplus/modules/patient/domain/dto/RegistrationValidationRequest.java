@@ -0,0 +1,22 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+public class RegistrationValidationRequest implements Serializable {
+    private String hospitalNumber;
+    private String ninNumber;
+    private String firstName;
+    private String surname;
+    private LocalDate dateOfBirth;
+    private LocalDate dateOfRegistration;
+    /**
+     * Set when validating an edit, so the person does not conflict with itself.
+     */
+    private Long personId;
+}
@@ -0,0 +1,52 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class RegistrationValidationResponse implements Serializable {
+    public static final String HOSPITAL_NUMBER_EXISTS = "HOSPITAL_NUMBER_EXISTS";
+    public static final String NIN_EXISTS = "NIN_EXISTS";
+    public static final String REGISTRATION_BEFORE_BIRTH = "REGISTRATION_BEFORE_BIRTH";
+
+    private boolean valid = true;
+    private List<Violation> violations = new ArrayList<>();
+    /**
+     * Persons of the facility with the same first name and surname; a warning, not a violation.
+     */
+    private List<DuplicateCandidate> duplicateCandidates = new ArrayList<>();
+
+    public void addViolation(String field, String code, String message) {
+        violations.add(new Violation(field, code, message));
+        valid = false;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Violation implements Serializable {
+        private String field;
+        private String code;
+        private String message;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class DuplicateCandidate implements Serializable {
+        private Long id;
+        private String uuid;
+        private String hospitalNumber;
+        private String firstName;
+        private String surname;
+        private String sex;
+        private LocalDate dateOfBirth;
+        private boolean sameDateOfBirth;
+    }
+}
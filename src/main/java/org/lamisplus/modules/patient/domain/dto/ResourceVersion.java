@@ -0,0 +1,13 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class ResourceVersion {
+    private String eTag;
+    private LocalDateTime lastModified;
+}
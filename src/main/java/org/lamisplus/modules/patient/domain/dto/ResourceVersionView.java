@@ -0,0 +1,15 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns a response is derived from, without its JSONB payload, used to answer conditional GETs.
+ * {@code detail} concatenates whatever else changes the response, such as child row counts and timestamps.
+ */
+public interface ResourceVersionView {
+    String getUuid();
+
+    LocalDateTime getLastModifiedDate();
+
+    String getDetail();
+}
@@ -0,0 +1,21 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class SlowQueryDto implements Serializable {
+    private LocalDateTime executedAt;
+    private String sql;
+    private int bindCount;
+    private long durationMillis;
+    /**
+     * Innermost patient service or controller method on the stack, e.g. PersonService.getPerson.
+     */
+    private String caller;
+    private String thread;
+}
@@ -0,0 +1,21 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class TimerSummaryDto implements Serializable {
+    private String name;
+    private Map<String, String> tags;
+    private long count;
+    private double totalMillis;
+    private double meanMillis;
+    private double maxMillis;
+    private Double p50Millis;
+    private Double p95Millis;
+    private Double p99Millis;
+}
@@ -0,0 +1,22 @@
+package org.lamisplus.modules.patient.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class VisitImportDto implements Serializable {
+    private String uuid;
+    private LocalDateTime createdDate;
+    private String createdBy;
+    private LocalDateTime lastModifiedDate;
+    private String lastModifiedBy;
+    private Long facilityId;
+    private String personUuid;
+    private LocalDateTime visitStartDate;
+    private LocalDateTime visitEndDate;
+    private Integer archived;
+}
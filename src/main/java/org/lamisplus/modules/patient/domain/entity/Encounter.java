@@ -1,6 +1,7 @@
 package org.lamisplus.modules.patient.domain.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Type;
 import org.springframework.data.domain.Persistable;
 
 import javax.persistence.*;
@@ -30,6 +31,7 @@ public class Encounter extends PatientAuditEntity implements Persistable<Long>,
     @JoinColumn(name = "person_uuid", nullable = false, referencedColumnName = "uuid")
     private Person person;
 
+    @Type(type = "pg-uuid-string")
     @Column(name = "uuid", nullable = false, unique = true, updatable = false)
     private String uuid;
 
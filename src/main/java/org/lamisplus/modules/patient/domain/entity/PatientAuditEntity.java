@@ -11,6 +11,7 @@ import lombok.Data;
 import lombok.ToString;
 import org.hibernate.annotations.TypeDef;
 import org.hibernate.annotations.TypeDefs;
+import org.lamisplus.modules.patient.utility.PostgresUuidStringType;
 import org.lamisplus.modules.patient.utility.SecurityUtils;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -30,35 +31,63 @@ import java.time.LocalDateTime;
         @TypeDef(name = "jsonb", typeClass = JsonBinaryType.class),
         @TypeDef(name = "jsonb-node", typeClass = JsonNodeBinaryType.class),
         @TypeDef(name = "json-node", typeClass = JsonNodeStringType.class),
+        @TypeDef(name = PostgresUuidStringType.NAME, typeClass = PostgresUuidStringType.class),
 })
 public class PatientAuditEntity {
 
     @Column(name = "created_date", updatable = false)
     @CreatedDate
-    private LocalDateTime createdDate = LocalDateTime.now ();
+    private LocalDateTime createdDate;
 
     //@JsonIgnore
     @ToString.Exclude
     @Column(name = "created_by", updatable = false)
-    private String createdBy = SecurityUtils.getCurrentUserLogin ().orElse ("");
+    private String createdBy;
 
 
     @Column(name = "last_modified_date")
     @LastModifiedDate
-    private LocalDateTime lastModifiedDate = LocalDateTime.now ();
+    private LocalDateTime lastModifiedDate;
 
 
     @Column(name = "last_modified_by")
     //@JsonIgnore
     @ToString.Exclude
-    private String lastModifiedBy = SecurityUtils.getCurrentUserLogin ().orElse ("");
+    private String lastModifiedBy;
 
     private Long facilityId;
 
+    // audit values are filled when the entity is written, not when it is constructed, so rows loaded
+    // by Hibernate do not each look up the current login
     @PrePersist
+    public void prePersist() {
+        String login = SecurityUtils.getCurrentUserLogin ().orElse ("");
+        LocalDateTime now = LocalDateTime.now ();
+        if (createdDate == null) createdDate = now;
+        if (createdBy == null) createdBy = login;
+        lastModifiedDate = now;
+        lastModifiedBy = login;
+    }
+
     @PreUpdate
     public void update() {
         lastModifiedDate = LocalDateTime.now ();
         lastModifiedBy = SecurityUtils.getCurrentUserLogin ().orElse ("");
     }
+
+    /**
+     * Fills audit values that are still unset, for rows written with plain JDBC rather than through
+     * the entity manager.
+     */
+    public void applyAuditDefaults() {
+        if (createdDate != null && createdBy != null && lastModifiedDate != null && lastModifiedBy != null) {
+            return;
+        }
+        String login = SecurityUtils.getCurrentUserLogin ().orElse ("");
+        LocalDateTime now = LocalDateTime.now ();
+        if (createdDate == null) createdDate = now;
+        if (createdBy == null) createdBy = login;
+        if (lastModifiedDate == null) lastModifiedDate = now;
+        if (lastModifiedBy == null) lastModifiedBy = login;
+    }
 }
@@ -0,0 +1,49 @@
+package org.lamisplus.modules.patient.domain.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "patient_change_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PatientChangeOutbox implements Serializable {
+    public static final String PERSON = "PERSON";
+    public static final String VISIT = "VISIT";
+    public static final String ENCOUNTER = "ENCOUNTER";
+
+    public static final String INSERT = "INSERT";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+    /**
+     * The row was moved to patient_visit_history or patient_encounter_history by the archive job. It still exists
+     * and is unchanged, so consumers must keep their copy; it is only no longer served by the patient API.
+     */
+    public static final String ARCHIVE = "ARCHIVE";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "sequence_id", nullable = false)
+    private Long sequenceId;
+    @Column(name = "entity_type", nullable = false, updatable = false)
+    private String entityType;
+    @Column(name = "entity_uuid", nullable = false, updatable = false)
+    private String entityUuid;
+    @Column(name = "facility_id", updatable = false)
+    private Long facilityId;
+    @Column(name = "operation", nullable = false, updatable = false)
+    private String operation;
+    @Column(name = "transaction_id", insertable = false, updatable = false)
+    private Long transactionId;
+    @Builder.Default
+    @Column(name = "created_date", nullable = false, updatable = false)
+    private LocalDateTime createdDate = LocalDateTime.now();
+}
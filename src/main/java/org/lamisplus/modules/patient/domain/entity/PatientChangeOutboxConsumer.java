@@ -0,0 +1,29 @@
+package org.lamisplus.modules.patient.domain.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "patient_change_outbox_consumer")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PatientChangeOutboxConsumer implements Serializable {
+    @Id
+    @Column(name = "consumer_name", nullable = false)
+    private String consumerName;
+    @Column(name = "last_transaction_id", nullable = false)
+    private Long lastTransactionId;
+    @Column(name = "last_sequence_id", nullable = false)
+    private Long lastSequenceId;
+    @Column(name = "last_acknowledged_date")
+    private LocalDateTime lastAcknowledgedDate;
+}
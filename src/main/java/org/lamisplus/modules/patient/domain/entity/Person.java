@@ -72,6 +72,7 @@ public class Person extends PatientAuditEntity implements Persistable<Long>  , S
     @Column(name = "emr_id")
     private  String emrId;
 
+    @Type(type = "pg-uuid-string")
     @Column(name = "uuid", nullable = false, unique = true, updatable = false)
     private String uuid;
     @Column(name = "first_name")
@@ -2,13 +2,14 @@ package org.lamisplus.modules.patient.domain.entity;
 
 
 import lombok.*;
+import org.hibernate.annotations.Type;
+import org.lamisplus.modules.patient.utility.PatientUuid;
 import org.springframework.data.domain.Persistable;
 
 import javax.persistence.*;
 import javax.validation.constraints.PastOrPresent;
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Entity
 @Table(name = "patient_visit")
@@ -31,8 +32,9 @@ public class Visit extends PatientAuditEntity implements Persistable<Long>, Seri
     private LocalDateTime visitStartDate;
     @Column(name = "visit_end_date")
     private LocalDateTime visitEndDate;
+    @Type(type = "pg-uuid-string")
     @Column(name = "uuid", nullable = false, unique = true, updatable = false)
-    private String uuid = UUID.randomUUID().toString();
+    private String uuid = PatientUuid.next();
     private Integer archived = 0;
 
     @Override
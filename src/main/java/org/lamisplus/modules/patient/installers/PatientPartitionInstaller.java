@@ -0,0 +1,17 @@
+package org.lamisplus.modules.patient.installers;
+
+import com.foreach.across.core.annotations.Installer;
+import com.foreach.across.core.installers.AcrossLiquibaseInstaller;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+
+@Order(3)
+@ConditionalOnProperty(prefix = "patient.partitioning", name = "enabled", havingValue = "true")
+@Installer(name = "patient-partition-installer",
+        description = "Range partitions patient_visit and patient_encounter by date",
+        version = 3)
+public class PatientPartitionInstaller extends AcrossLiquibaseInstaller {
+    public PatientPartitionInstaller() {
+        super("classpath:installers/patient/schema/partition.xml");
+    }
+}
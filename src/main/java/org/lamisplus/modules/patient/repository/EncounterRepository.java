@@ -1,21 +1,21 @@
 package org.lamisplus.modules.patient.repository;
 
 import liquibase.pro.packaged.E;
+import org.lamisplus.modules.patient.domain.dto.ArchivedEncounterView;
 import org.lamisplus.modules.patient.domain.entity.Encounter;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.domain.entity.Visit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
-public interface EncounterRepository extends JpaRepository<Encounter, Long> {
+public interface EncounterRepository extends JpaRepository<Encounter, Long>, EncounterRepositoryCustom {
     List<Encounter> findAllByArchivedAndFacilityId(Integer archived, Long facilityId);
 
     List<Encounter> findAllByServiceCodeAndStatus(String serviceCode, String status);
 
-    Optional<Encounter> getEncounterByVisitAndStatusAndServiceCode(Visit visit, String status, String serviceCode);
-
     List<Encounter> getEncounterByPersonAndArchived(Person person, Integer archived);
 
     List<Encounter> getEncounterByVisit(Visit visit);
@@ -27,5 +27,20 @@ public interface EncounterRepository extends JpaRepository<Encounter, Long> {
 
     List<Encounter> findByPersonAndStatus (Person person, String status);
 
+    @Query(value = "SELECT e.id AS \"id\", e.facility_id AS \"facilityId\", e.encounter_date AS \"encounterDate\", " +
+            "CAST(e.uuid AS VARCHAR) AS \"uuid\", e.service_code AS \"serviceCode\", e.status AS \"status\", " +
+            "v.id AS \"visitId\", v.visit_start_date AS \"checkInDate\", v.visit_end_date AS \"checkOutDate\" " +
+            "FROM patient_encounter_history e " +
+            "JOIN patient_visit_history v ON v.uuid = e.visit_id " +
+            "JOIN patient_person p ON p.uuid = e.person_uuid " +
+            "WHERE p.id = ?1 AND e.archived = 0 " +
+            "ORDER BY v.visit_start_date DESC, e.id", nativeQuery = true)
+    List<ArchivedEncounterView> findArchivedEncountersByPersonId(Long personId);
+
+    @Query(value = "SELECT * FROM patient_encounter WHERE facility_id = ?1 " +
+            "AND (last_modified_date, id) > (?2, ?3) AND last_modified_date <= ?4 " +
+            "ORDER BY last_modified_date, id LIMIT ?5", nativeQuery = true)
+    List<Encounter> findChangesAfter(Long facilityId, LocalDateTime lastModifiedDate, Long id, LocalDateTime settledBefore, int limit);
+
 
 }
@@ -0,0 +1,17 @@
+package org.lamisplus.modules.patient.repository;
+
+import org.lamisplus.modules.patient.domain.entity.Encounter;
+
+import java.util.Optional;
+
+public interface EncounterRepositoryCustom {
+
+    /**
+     * Inserts the encounter unless an open (pending, unarchived) encounter already exists
+     * for the same visit and service. The unique index uq_patient_encounter_open_visit_service
+     * decides, so concurrent check-ins cannot create duplicates.
+     *
+     * @return the inserted encounter with its generated id, or empty when an open encounter already existed
+     */
+    Optional<Encounter> insertIfNoOpenEncounter(Encounter encounter);
+}
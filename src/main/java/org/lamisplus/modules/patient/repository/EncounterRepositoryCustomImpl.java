@@ -0,0 +1,117 @@
+package org.lamisplus.modules.patient.repository;
+
+import org.hibernate.Session;
+import org.lamisplus.modules.patient.domain.entity.Encounter;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Optional;
+
+public class EncounterRepositoryCustomImpl implements EncounterRepositoryCustom {
+
+    private static final String INSERT_ENCOUNTER =
+            "INSERT INTO patient_encounter (created_date, created_by, last_modified_date, last_modified_by, facility_id, " +
+                    "encounter_date, person_uuid, uuid, visit_id, service_code, status, archived) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ";
+
+    private static final String INSERT_IF_NO_OPEN_ENCOUNTER = INSERT_ENCOUNTER +
+            "ON CONFLICT (visit_id, service_code) WHERE status = 'PENDING' AND archived = 0 DO NOTHING RETURNING id";
+
+    private static final String INSERT_IGNORING_CONFLICTS = INSERT_ENCOUNTER + "ON CONFLICT DO NOTHING RETURNING id";
+
+    private static final String OPEN_ENCOUNTER_INDEX_EXISTS =
+            "SELECT to_regclass('uq_patient_encounter_open_visit_service') IS NOT NULL";
+
+    private static final String LOCK_VISIT_SERVICE = "SELECT pg_advisory_xact_lock(hashtext(?))";
+
+    private static final String OPEN_ENCOUNTER_EXISTS =
+            "SELECT 1 FROM patient_encounter WHERE visit_id = ? AND service_code = ? AND status = 'PENDING' AND archived = 0 LIMIT 1";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile Boolean openEncounterIndexExists;
+
+    @Override
+    @Transactional
+    public Optional<Encounter> insertIfNoOpenEncounter(Encounter encounter) {
+        encounter.prePersist();
+        Long id = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            if (hasOpenEncounterIndex(connection)) {
+                return insert(connection, INSERT_IF_NO_OPEN_ENCOUNTER, encounter);
+            }
+            // partitioned patient_encounter cannot carry the unique index, so serialize per visit and service instead;
+            // like the index, this only applies to open (PENDING, unarchived) encounters
+            if (isOpen(encounter)) {
+                lockVisitService(connection, encounter);
+                if (openEncounterExists(connection, encounter)) {
+                    return null;
+                }
+            }
+            return insert(connection, INSERT_IGNORING_CONFLICTS, encounter);
+        });
+        if (id == null) {
+            return Optional.empty();
+        }
+        encounter.setId(id);
+        return Optional.of(encounter);
+    }
+
+    private static boolean isOpen(Encounter encounter) {
+        return "PENDING".equals(encounter.getStatus()) && Integer.valueOf(0).equals(encounter.getArchived());
+    }
+
+    private boolean hasOpenEncounterIndex(Connection connection) throws SQLException {
+        if (openEncounterIndexExists == null) {
+            try (PreparedStatement statement = connection.prepareStatement(OPEN_ENCOUNTER_INDEX_EXISTS);
+                 ResultSet resultSet = statement.executeQuery()) {
+                openEncounterIndexExists = resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+        return openEncounterIndexExists;
+    }
+
+    private void lockVisitService(Connection connection, Encounter encounter) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(LOCK_VISIT_SERVICE)) {
+            statement.setString(1, encounter.getVisit().getUuid() + ":" + encounter.getServiceCode());
+            statement.executeQuery().close();
+        }
+    }
+
+    private boolean openEncounterExists(Connection connection, Encounter encounter) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(OPEN_ENCOUNTER_EXISTS)) {
+            statement.setObject(1, encounter.getVisit().getUuid(), Types.OTHER);
+            statement.setString(2, encounter.getServiceCode());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private Long insert(Connection connection, String sql, Encounter encounter) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setTimestamp(1, Timestamp.valueOf(encounter.getCreatedDate()));
+            statement.setString(2, encounter.getCreatedBy());
+            statement.setTimestamp(3, Timestamp.valueOf(encounter.getLastModifiedDate()));
+            statement.setString(4, encounter.getLastModifiedBy());
+            statement.setObject(5, encounter.getFacilityId(), Types.BIGINT);
+            statement.setTimestamp(6, Timestamp.valueOf(encounter.getEncounterDate()));
+            statement.setObject(7, encounter.getPerson().getUuid(), Types.OTHER);
+            statement.setObject(8, encounter.getUuid(), Types.OTHER);
+            statement.setObject(9, encounter.getVisit().getUuid(), Types.OTHER);
+            statement.setString(10, encounter.getServiceCode());
+            statement.setString(11, encounter.getStatus());
+            statement.setObject(12, encounter.getArchived(), Types.INTEGER);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.lamisplus.modules.patient.repository;
+
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutboxConsumer;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PatientChangeOutboxConsumerRepository extends JpaRepository<PatientChangeOutboxConsumer, String> {
+}
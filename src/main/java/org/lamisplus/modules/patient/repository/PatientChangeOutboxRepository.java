@@ -0,0 +1,36 @@
+package org.lamisplus.modules.patient.repository;
+
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface PatientChangeOutboxRepository extends JpaRepository<PatientChangeOutbox, Long> {
+    /**
+     * Rows after the (transaction_id, sequence_id) position, limited to transactions that are older than every
+     * transaction still running and so can no longer be joined by rows that are not visible yet.
+     */
+    @Query(value = "SELECT * FROM patient_change_outbox o" +
+            " WHERE (o.transaction_id, o.sequence_id) > (?1, ?2)" +
+            " AND o.transaction_id < txid_snapshot_xmin(txid_current_snapshot())" +
+            " ORDER BY o.transaction_id, o.sequence_id LIMIT ?3", nativeQuery = true)
+    List<PatientChangeOutbox> findCommittedAfter(Long transactionId, Long sequenceId, int limit);
+
+    @Query(value = "SELECT * FROM patient_change_outbox o" +
+            " WHERE o.facility_id = ?1 AND (o.transaction_id, o.sequence_id) > (?2, ?3)" +
+            " AND o.transaction_id < txid_snapshot_xmin(txid_current_snapshot())" +
+            " ORDER BY o.transaction_id, o.sequence_id LIMIT ?4", nativeQuery = true)
+    List<PatientChangeOutbox> findCommittedAfterByFacility(Long facilityId, Long transactionId, Long sequenceId, int limit);
+
+    /**
+     * Deletes the rows every consumer has acknowledged, i.e. up to the lowest consumer position.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM patient_change_outbox o" +
+            " WHERE (o.transaction_id, o.sequence_id) <= (SELECT c.last_transaction_id, c.last_sequence_id" +
+            " FROM patient_change_outbox_consumer c ORDER BY c.last_transaction_id, c.last_sequence_id LIMIT 1)",
+            nativeQuery = true)
+    int deleteAcknowledged();
+}
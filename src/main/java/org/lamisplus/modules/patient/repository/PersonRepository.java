@@ -1,5 +1,7 @@
 package org.lamisplus.modules.patient.repository;
 
+import org.lamisplus.modules.patient.domain.dto.RegistrationConflictView;
+import org.lamisplus.modules.patient.domain.dto.ResourceVersionView;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -149,38 +151,38 @@ public interface PersonRepository extends JpaRepository<Person, Long> {
     Integer getBiometricCountByPersonUuid(String uuid);
 
 
-    @Query(value = "SELECT * FROM patient_person pp WHERE uuid NOT IN (SELECT person_uuid FROM pmtct_anc pa where pa.archived = 0) and (pp.first_name ilike ?1 OR pp.surname ilike ?1 OR pp.other_name ilike ?1 OR pp.full_name ilike ?1 OR pp.hospital_number ilike ?1) AND pp.archived=?2 AND pp.facility_id=?3 AND pp.sex ilike '%FEMALE%' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pp.id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person pp WHERE NOT EXISTS (SELECT 1 FROM pmtct_anc pa WHERE pa.archived = 0 AND patient_uuid(pa.person_uuid) = pp.uuid) and (pp.first_name ilike ?1 OR pp.surname ilike ?1 OR pp.other_name ilike ?1 OR pp.full_name ilike ?1 OR pp.hospital_number ilike ?1) AND pp.archived=?2 AND pp.facility_id=?3 AND pp.sex ilike '%FEMALE%' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pp.id desc", nativeQuery = true)
     Page<Person> findFemalePersonBySearchParameters(String queryParam, Integer archived, Long facilityId, Pageable pageable);
 
     //@Query(value = "SELECT * FROM patient_person pp WHERE pp.archived=?1 AND pp.facility_id=?2 AND pp.sex ilike '%FEMALE%' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pp.id desc", nativeQuery = true)
-    @Query(value = "SELECT * FROM patient_person pp WHERE uuid NOT IN (SELECT person_uuid FROM pmtct_anc pa where pa.archived = 0) and pp.archived=?1 AND pp.facility_id=?2 AND pp.sex ilike '%FEMALE%' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pp.id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person pp WHERE NOT EXISTS (SELECT 1 FROM pmtct_anc pa WHERE pa.archived = 0 AND patient_uuid(pa.person_uuid) = pp.uuid) and pp.archived=?1 AND pp.facility_id=?2 AND pp.sex ilike '%FEMALE%' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pp.id desc", nativeQuery = true)
     Page<Person> findFemalePerson(Integer archived, Long facilityId, Pageable pageable);
 
     @Query(value = "SELECT * FROM patient_person pp WHERE pp.archived=?1 AND pp.facility_id=?2 AND pp.sex ilike 'FEMALE' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pp.id desc", nativeQuery = true)
     Page<Person> findFemalePerson2(Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT * FROM patient_person pp INNER JOIN pmtct_anc pa ON (pp.uuid=pa.person_uuid and pa.archived=0) WHERE pp.archived=?1 AND pp.facility_id=?2 AND pp.sex ilike 'FEMALE' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pa.id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person pp INNER JOIN pmtct_anc pa ON (pp.uuid=patient_uuid(pa.person_uuid) and pa.archived=0) WHERE pp.archived=?1 AND pp.facility_id=?2 AND pp.sex ilike 'FEMALE' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pa.id desc", nativeQuery = true)
     Page<Person> getActiveOnANC(Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT * FROM patient_person pp INNER JOIN pmtct_anc pa ON (pp.uuid=pa.person_uuid and pa.archived=0) WHERE (first_name ilike ?1 OR surname ilike ?1 OR other_name ilike ?1 OR full_name ilike ?1 OR hospital_number ilike ?1) AND pp.archived=?2 AND pp.facility_id=?3 AND pp.sex ilike 'FEMALE' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pa.id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person pp INNER JOIN pmtct_anc pa ON (pp.uuid=patient_uuid(pa.person_uuid) and pa.archived=0) WHERE (first_name ilike ?1 OR surname ilike ?1 OR other_name ilike ?1 OR full_name ilike ?1 OR hospital_number ilike ?1) AND pp.archived=?2 AND pp.facility_id=?3 AND pp.sex ilike 'FEMALE' AND (EXTRACT (YEAR FROM now()) - EXTRACT(YEAR FROM pp.date_of_birth) >= 10 ) ORDER BY pa.id desc", nativeQuery = true)
     Page<Person> getActiveOnANCBySearchParameters(String queryParam, Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT p.* from patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) >= 6) b on p.uuid = b.person_uuid WHERE p.archived=?1 and p.facility_id =?2 ORDER BY p.id desc", nativeQuery = true)
+    @Query(value = "SELECT p.* from patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) >= 6) b on p.uuid = patient_uuid(b.person_uuid) WHERE p.archived=?1 and p.facility_id =?2 ORDER BY p.id desc", nativeQuery = true)
     Page<Person> findPersonWithBiometrics(Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT * FROM patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) >= 6) b on p.uuid = b.person_uuid  WHERE (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1) AND p.archived=?2 AND p.facility_id=?3 ORDER BY p.id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) >= 6) b on p.uuid = patient_uuid(b.person_uuid)  WHERE (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1) AND p.archived=?2 AND p.facility_id=?3 ORDER BY p.id desc", nativeQuery = true)
     Page<Person> findPersonWithBiometricsUsingSearchParam(String queryParam, Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT p.* from patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) < 6) b on p.uuid = b.person_uuid WHERE p.archived=?1 and p.facility_id =?2 ORDER BY p.id desc", nativeQuery = true)
+    @Query(value = "SELECT p.* from patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) < 6) b on p.uuid = patient_uuid(b.person_uuid) WHERE p.archived=?1 and p.facility_id =?2 ORDER BY p.id desc", nativeQuery = true)
     Page<Person> findPersonWithOutBiometrics(Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT * FROM patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) < 6) b on p.uuid = b.person_uuid  WHERE (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1) AND p.archived=?2 AND p.facility_id=?3 ORDER BY p.id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person p JOIN (select person_uuid FROM biometric b Group by person_uuid HAVING count(person_uuid) < 6) b on p.uuid = patient_uuid(b.person_uuid)  WHERE (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1) AND p.archived=?2 AND p.facility_id=?3 ORDER BY p.id desc", nativeQuery = true)
     Page<Person> findPersonWithOutBiometricsUsingSearchParam(String queryParam, Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT * FROM patient_person WHERE uuid NOT IN (SELECT person_uuid FROM biometric) and archived=?1 and facility_id =?2 ORDER BY id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person p WHERE NOT EXISTS (SELECT 1 FROM biometric b WHERE patient_uuid(b.person_uuid) = p.uuid) and p.archived=?1 and p.facility_id =?2 ORDER BY p.id desc", nativeQuery = true)
     Page<Person> findPersonWithOutBiometrics3(Integer archived, Long facilityId, Pageable pageable);
 
-    @Query(value = "SELECT * FROM patient_person WHERE uuid NOT IN (SELECT person_uuid FROM biometric) and  (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1) and archived=?2 and facility_id =?3 ORDER BY id desc", nativeQuery = true)
+    @Query(value = "SELECT * FROM patient_person p WHERE NOT EXISTS (SELECT 1 FROM biometric b WHERE patient_uuid(b.person_uuid) = p.uuid) and  (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1) and p.archived=?2 and p.facility_id =?3 ORDER BY p.id desc", nativeQuery = true)
     Page<Person> findPersonWithOutBiometrics4(String queryParam, Integer archived, Long facilityId, Pageable pageable);
 
     @Query(value = "SELECT DISTINCT p.* FROM patient_person p\n" +
@@ -188,7 +190,7 @@ public interface PersonRepository extends JpaRepository<Person, Long> {
             "\t\t\tSELECT person_uuid, MAX(recapture) FROM BIOMETRIC\n" +
             "\t\t\t\tWHERE archived = 0\n" +
             "\t\t\tGROUP BY person_uuid\t\n" +
-            "\t\t) b on p.uuid = b.person_uuid\n" +
+            "\t\t) b on p.uuid = patient_uuid(b.person_uuid)\n" +
             "            WHERE \n" +
             "\t\t\tb.max = 0 AND \n" +
             "\t\t\tp.archived=?1 and p.facility_id =?2", nativeQuery = true)
@@ -198,7 +200,7 @@ public interface PersonRepository extends JpaRepository<Person, Long> {
             "\t\t\tSELECT person_uuid, MAX(recapture) FROM BIOMETRIC\n" +
             "\t\t\t\tWHERE archived = 0\n" +
             "\t\t\tGROUP BY person_uuid\t\n" +
-            "\t\t) b on p.uuid = b.person_uuid\n" +
+            "\t\t) b on p.uuid = patient_uuid(b.person_uuid)\n" +
             "            WHERE \n" +
             "\t\t\tb.max = 0 \n" +
             "\t\t\tAND (p.first_name ilike ?1 OR p.surname ilike ?1 OR p.other_name ilike ?1 OR p.full_name ilike ?1 OR p.hospital_number ilike ?1)\n" +
@@ -219,6 +221,33 @@ public interface PersonRepository extends JpaRepository<Person, Long> {
     @Query(value ="SELECT * FROM patient_person WHERE last_modified_date > ?1 AND facility_id=?2", nativeQuery = true)
     public List<Person> getAllDueForServerUpload(LocalDateTime dateLastSync, Long facilityId);
 
+    @Query(value = "SELECT * FROM patient_person WHERE facility_id = ?1 " +
+            "AND (last_modified_date, id) > (?2, ?3) AND last_modified_date <= ?4 " +
+            "ORDER BY last_modified_date, id LIMIT ?5", nativeQuery = true)
+    List<Person> findChangesAfter(Long facilityId, LocalDateTime lastModifiedDate, Long id, LocalDateTime settledBefore, int limit);
+
+    /**
+     * One index-backed pass for every registration check: pass null for a value that should not be checked,
+     * and 0 as personId for a new registration. The newest hospital number match and the newest NIN match sort
+     * first, then the other matches of either, then same-name rows, so a limit of at least 2 never cuts a
+     * hospital number or NIN violation.
+     */
+    @Query(value = "SELECT id AS \"id\", CAST(uuid AS VARCHAR) AS \"uuid\", hospital_number AS \"hospitalNumber\", " +
+            "nin_number AS \"ninNumber\", first_name AS \"firstName\", surname AS \"surname\", sex AS \"sex\", " +
+            "date_of_birth AS \"dateOfBirth\" " +
+            "FROM (SELECT id, uuid, hospital_number, nin_number, first_name, surname, sex, date_of_birth, " +
+            "COALESCE(hospital_number = CAST(?3 AS VARCHAR), false) AS hospital_number_match, " +
+            "COALESCE(nin_number = CAST(?4 AS VARCHAR), false) AS nin_match " +
+            "FROM patient_person " +
+            "WHERE facility_id = ?1 AND archived = 0 AND id <> ?2 " +
+            "AND (hospital_number = CAST(?3 AS VARCHAR) OR nin_number = CAST(?4 AS VARCHAR) " +
+            "OR (LOWER(surname) = LOWER(CAST(?6 AS VARCHAR)) AND LOWER(first_name) = LOWER(CAST(?5 AS VARCHAR))))) c " +
+            "ORDER BY (hospital_number_match AND row_number() OVER (PARTITION BY hospital_number_match ORDER BY id DESC) = 1) " +
+            "OR (nin_match AND row_number() OVER (PARTITION BY nin_match ORDER BY id DESC) = 1) DESC, " +
+            "(hospital_number_match OR nin_match) DESC, id DESC LIMIT ?7", nativeQuery = true)
+    List<RegistrationConflictView> findRegistrationConflicts(Long facilityId, Long personId, String hospitalNumber,
+                                                             String ninNumber, String firstName, String surname, int limit);
+
     @Query(value = "SELECT CASE WHEN sex = 'Female' THEN 'Female' WHEN sex = 'Male' THEN 'Male' ELSE 'Others' END AS name, COUNT(*) AS count FROM patient_person GROUP BY sex", nativeQuery = true)
     List<Object[]> countRegistrationsBySex();
 
@@ -229,6 +258,21 @@ public interface PersonRepository extends JpaRepository<Person, Long> {
             "GROUP BY EXTRACT(YEAR FROM date_of_registration)", nativeQuery = true)
     List<Object[]> countRegistrationsByYearAndSex();
 
+    @Query(value = "SELECT CAST(p.uuid AS VARCHAR) AS \"uuid\", " +
+            "GREATEST(p.last_modified_date, (SELECT MAX(v.last_modified_date) FROM patient_visit v WHERE v.person_uuid = p.uuid)) AS \"lastModifiedDate\", " +
+            "CONCAT_WS(':', p.last_modified_date, (SELECT v.id FROM patient_visit v WHERE v.person_uuid = p.uuid " +
+            "AND v.archived = 0 AND v.visit_start_date IS NOT NULL ORDER BY v.last_modified_date DESC LIMIT 1)) AS \"detail\" " +
+            "FROM patient_person p WHERE p.id = ?1", nativeQuery = true)
+    Optional<ResourceVersionView> findPersonVersion(Long id);
+
+    /**
+     * The newest modification, read from idx_patient_person_last_modified, and the last change outbox sequence
+     * value, which moves on every recorded person write, including imported rows older than that modification.
+     */
+    @Query(value = "SELECT (SELECT MAX(last_modified_date) FROM patient_person) AS \"lastModifiedDate\", " +
+            "CAST((SELECT last_value FROM patient_change_outbox_sequence_id_seq) AS VARCHAR) AS \"detail\"", nativeQuery = true)
+    ResourceVersionView findRegistrationStatsVersion();
+
 }
 
 
@@ -1,5 +1,6 @@
 package org.lamisplus.modules.patient.repository;
 
+import org.lamisplus.modules.patient.domain.dto.ResourceVersionView;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.domain.entity.Visit;
 import org.springframework.data.domain.Page;
@@ -43,15 +44,29 @@ public interface VisitRepository extends JpaRepository<Visit, Long> {
     @Query(value ="SELECT * FROM patient_visit WHERE last_modified_date > ?1 AND facility_id=?2", nativeQuery = true)
     List<Visit> getAllDueForServerUpload(LocalDateTime dateLastSync, Long facilityId);
 
+    @Query(value = "SELECT * FROM patient_visit WHERE facility_id = ?1 " +
+            "AND (last_modified_date, id) > (?2, ?3) AND last_modified_date <= ?4 " +
+            "ORDER BY last_modified_date, id LIMIT ?5", nativeQuery = true)
+    List<Visit> findChangesAfter(Long facilityId, LocalDateTime lastModifiedDate, Long id, LocalDateTime settledBefore, int limit);
+
     @Query(value ="SELECT * from patient_visit \n" +
-            "WHERE person_uuid = ?1\n" +
+            "WHERE person_uuid = patient_uuid(?1)\n" +
             "AND visit_start_date IS NOT NULL\n" +
             "AND archived = 0\n" +
             "ORDER By last_modified_date DESC\n" +
             "LIMIT 1", nativeQuery = true)
     Optional<Visit> getRecentPatientVisit(String uuid);
 
+    Optional<Visit> findFirstByPersonAndArchivedAndVisitStartDateNotNullOrderByLastModifiedDateDesc(Person person, Integer archived);
+
     Optional<Visit> findByVisitStartDateAndPerson(LocalDateTime visitStartDate, Person person);
 
     Optional<Visit> findByUuid(String uuid);
+
+    @Query(value = "SELECT CAST(v.uuid AS VARCHAR) AS \"uuid\", " +
+            "GREATEST(v.last_modified_date, MAX(e.last_modified_date)) AS \"lastModifiedDate\", " +
+            "CONCAT_WS(':', v.last_modified_date, COUNT(e.id), MAX(e.last_modified_date)) AS \"detail\" " +
+            "FROM patient_visit v LEFT JOIN patient_encounter e ON e.visit_id = v.uuid " +
+            "WHERE v.id = ?1 GROUP BY v.uuid, v.last_modified_date", nativeQuery = true)
+    Optional<ResourceVersionView> findVisitVersion(Long id);
 }
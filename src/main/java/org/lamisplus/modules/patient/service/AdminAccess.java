@@ -0,0 +1,25 @@
+package org.lamisplus.modules.patient.service;
+
+import org.lamisplus.modules.patient.utility.SecurityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Restricts the bulk data and operational endpoints (imports, table copies, outbox acknowledgement, metrics and
+ * query diagnostics) to the authorities in patient.admin-authorities.
+ */
+@Component
+public class AdminAccess {
+    @Value("${patient.admin-authorities:ROLE_ADMIN,Super Admin}")
+    private String[] adminAuthorities;
+
+    public void check(String operation) {
+        for (String authority : adminAuthorities) {
+            if (SecurityUtils.isCurrentUserInRole(authority.trim())) {
+                return;
+            }
+        }
+        throw new AccessDeniedException(operation + " is restricted to administrators");
+    }
+}
@@ -0,0 +1,156 @@
+package org.lamisplus.modules.patient.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.patient.domain.dto.ChangeFeedBatch;
+import org.lamisplus.modules.patient.domain.entity.Encounter;
+import org.lamisplus.modules.patient.domain.entity.PatientAuditEntity;
+import org.lamisplus.modules.patient.domain.entity.Person;
+import org.lamisplus.modules.patient.domain.entity.Visit;
+import org.lamisplus.modules.patient.repository.EncounterRepository;
+import org.lamisplus.modules.patient.repository.PersonRepository;
+import org.lamisplus.modules.patient.repository.VisitRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Persistable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Incremental change feed for sync, ordered by the (last_modified_date, id) cursor.
+ * Each batch carries an opaque resume token; passing it back returns the rows modified after
+ * the last row of that batch, so rows sharing a last_modified_date are neither lost nor repeated.
+ * <p>
+ * The cursor follows last_modified_date, which is set before the writing transaction commits, not commit order.
+ * Rows modified within the settle window are held back, so a transaction that commits within that window after
+ * setting last_modified_date is not skipped. This is best effort: a transaction that takes longer to commit can
+ * still be passed by the cursor, so consumers that cannot tolerate a missed change should ask for a longer window
+ * or use the change outbox. Rows moved out by the archive never appear in the feed.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ChangeFeedService {
+    private static final LocalDateTime FEED_START = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final String TOKEN_SEPARATOR = "|";
+
+    private final PersonRepository personRepository;
+    private final VisitRepository visitRepository;
+    private final EncounterRepository encounterRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${patient.change-feed.batch-size:500}")
+    private int defaultBatchSize;
+
+    @Value("${patient.change-feed.max-batch-size:5000}")
+    private int maxBatchSize;
+
+    @Value("${patient.change-feed.settle-seconds:5}")
+    private long settleSeconds;
+
+    public ChangeFeedBatch<Person> getPersonChanges(Long facilityId, String resumeToken, Integer batchSize, Long settleSeconds) {
+        LocalDateTime settledBefore = settledBefore(settleSeconds);
+        return getChanges(resumeToken, batchSize, (cursor, limit) -> personRepository
+                .findChangesAfter(facilityId, cursor.lastModifiedDate, cursor.id, settledBefore, limit));
+    }
+
+    public ChangeFeedBatch<Visit> getVisitChanges(Long facilityId, String resumeToken, Integer batchSize, Long settleSeconds) {
+        LocalDateTime settledBefore = settledBefore(settleSeconds);
+        return getChanges(resumeToken, batchSize, (cursor, limit) -> visitRepository
+                .findChangesAfter(facilityId, cursor.lastModifiedDate, cursor.id, settledBefore, limit));
+    }
+
+    public ChangeFeedBatch<Encounter> getEncounterChanges(Long facilityId, String resumeToken, Integer batchSize, Long settleSeconds) {
+        LocalDateTime settledBefore = settledBefore(settleSeconds);
+        return getChanges(resumeToken, batchSize, (cursor, limit) -> encounterRepository
+                .findChangesAfter(facilityId, cursor.lastModifiedDate, cursor.id, settledBefore, limit));
+    }
+
+    /**
+     * Reads a feed batch by batch, each in its own read-only transaction, handing every batch to the consumer
+     * before the next one is loaded.
+     *
+     * @return the resume token to continue from on the next run
+     */
+    public <T> String forEachBatch(String resumeToken, Function<String, ChangeFeedBatch<T>> feed, Consumer<List<T>> consumer) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        String token = resumeToken;
+        ChangeFeedBatch<T> batch;
+        do {
+            String current = token;
+            batch = transactionTemplate.execute(status -> feed.apply(current));
+            if (batch == null) {
+                break;
+            }
+            if (!batch.getItems().isEmpty()) {
+                consumer.accept(batch.getItems());
+            }
+            token = batch.getResumeToken();
+        } while (batch.isHasMore());
+        return token;
+    }
+
+    private <T extends PatientAuditEntity & Persistable<Long>> ChangeFeedBatch<T> getChanges(
+            String resumeToken, Integer batchSize, ChangeQuery<T> query) {
+        Cursor cursor = Cursor.decode(resumeToken);
+        int limit = batchSize == null || batchSize <= 0 ? defaultBatchSize : Math.min(batchSize, maxBatchSize);
+        List<T> items = query.find(cursor, limit);
+        if (items.isEmpty()) {
+            return new ChangeFeedBatch<>(items, Cursor.encode(cursor), false);
+        }
+        T last = items.get(items.size() - 1);
+        Cursor next = new Cursor(last.getLastModifiedDate(), last.getId());
+        return new ChangeFeedBatch<>(items, Cursor.encode(next), items.size() == limit);
+    }
+
+    /**
+     * The settle window asked for by the consumer, never shorter than the configured one.
+     */
+    private LocalDateTime settledBefore(Long requestedSettleSeconds) {
+        long seconds = requestedSettleSeconds == null ? settleSeconds : Math.max(requestedSettleSeconds, settleSeconds);
+        return LocalDateTime.now().minusSeconds(seconds);
+    }
+
+    @FunctionalInterface
+    private interface ChangeQuery<T> {
+        List<T> find(Cursor cursor, int limit);
+    }
+
+    private static final class Cursor {
+        private final LocalDateTime lastModifiedDate;
+        private final Long id;
+
+        private Cursor(LocalDateTime lastModifiedDate, Long id) {
+            this.lastModifiedDate = lastModifiedDate;
+            this.id = id;
+        }
+
+        private static String encode(Cursor cursor) {
+            String value = cursor.lastModifiedDate + TOKEN_SEPARATOR + cursor.id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Cursor decode(String token) {
+            if (token == null || token.isEmpty()) {
+                return new Cursor(FEED_START, 0L);
+            }
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = value.lastIndexOf(TOKEN_SEPARATOR);
+                return new Cursor(LocalDateTime.parse(value.substring(0, separator)),
+                        Long.parseLong(value.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid change feed resume token " + token);
+            }
+        }
+    }
+}
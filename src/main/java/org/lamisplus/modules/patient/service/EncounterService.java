@@ -3,19 +3,21 @@ package org.lamisplus.modules.patient.service;
 import lombok.RequiredArgsConstructor;
 import org.audit4j.core.util.Log;
 import org.lamisplus.modules.base.controller.apierror.EntityNotFoundException;
-import org.lamisplus.modules.base.domain.entities.User;
-import org.lamisplus.modules.base.service.UserService;
+import org.lamisplus.modules.patient.domain.dto.ArchivedEncounterView;
 import org.lamisplus.modules.patient.domain.dto.EncounterRequestDto;
 import org.lamisplus.modules.patient.domain.dto.EncounterResponseDto;
 import org.lamisplus.modules.patient.domain.dto.EncounterStatusResponseDto;
 import org.lamisplus.modules.patient.domain.entity.Encounter;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.domain.entity.Visit;
 import org.lamisplus.modules.patient.repository.EncounterRepository;
 import org.lamisplus.modules.patient.repository.PersonRepository;
 import org.lamisplus.modules.patient.repository.VisitRepository;
+import org.lamisplus.modules.patient.utility.PatientUuid;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -29,7 +31,10 @@ public class EncounterService {
     private final EncounterRepository encounterRepository;
     private final PersonRepository personRepository;
 
-    private final UserService userService;
+    private final FacilityContext facilityContext;
+
+    private final PatientChangeOutboxService changeOutboxService;
+    @Transactional
     public List<EncounterResponseDto> registerEncounter(EncounterRequestDto encounterRequestDto) {
         Long visitId = encounterRequestDto.getVisitId();
         Visit visit = visitRepository.findById(visitId).orElseThrow(() -> new EntityNotFoundException(EncounterService.class, "errorMessage", "No visit found with Id " + visitId));
@@ -38,23 +43,24 @@ public class EncounterService {
         serviceCodes
                 .stream()
                 .forEach(serviceCode -> {
-                    Optional<Encounter> existingEncounter =
-                            encounterRepository.getEncounterByVisitAndStatusAndServiceCode(visit, encounterRequestDto.getStatus(), serviceCode);
-                    if (!existingEncounter.isPresent()) {
-                        Encounter encounter = processedAndSaveEncounter(encounterRequestDto, serviceCode);
-                        encounter.setVisit(visit);
-                        encounterRequestDtos.add(convertEntityToResponseDto(encounterRepository.save(encounter)));
-                    }
+                    Encounter encounter = processedAndSaveEncounter(encounterRequestDto, serviceCode);
+                    encounter.setVisit(visit);
+                    encounterRepository.insertIfNoOpenEncounter(encounter)
+                            .ifPresent(saved -> {
+                                changeOutboxService.record(saved, PatientChangeOutbox.INSERT);
+                                encounterRequestDtos.add(convertEntityToResponseDto(saved));
+                            });
                 });
         return encounterRequestDtos;
     }
     private Encounter processedAndSaveEncounter(EncounterRequestDto encounterRequestDto, String s) {
         Encounter encounter = convertDtoToEntity(encounterRequestDto);
-        encounter.setUuid(UUID.randomUUID().toString());
+        encounter.setUuid(PatientUuid.next());
         encounter.setServiceCode(s);
         encounter.setArchived(0);
         return encounter;
     }
+    @Transactional
     public List<EncounterResponseDto> updateEncounter(Long id, EncounterRequestDto encounterRequestDto) {
         Encounter existEncounter = getExistEncounter(id);
         List<EncounterResponseDto> encounterRequestDtos = new ArrayList<>();
@@ -64,32 +70,36 @@ public class EncounterService {
                     Encounter encounter = processedAndSaveEncounter(encounterRequestDto, serviceCode);
                     encounter.setId(existEncounter.getId());
                     encounter.setArchived(0);
-                    encounterRequestDtos.add(convertEntityToResponseDto(encounterRepository.save(encounter)));
+                    Encounter savedEncounter = encounterRepository.save(encounter);
+                    changeOutboxService.record(savedEncounter, PatientChangeOutbox.UPDATE);
+                    encounterRequestDtos.add(convertEntityToResponseDto(savedEncounter));
                 });
         return encounterRequestDtos;
     }
     public List<EncounterResponseDto> getAllEncounters() {
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         return encounterRepository.findAllByArchivedAndFacilityId(0, currentOrganisationUnitId)
                 .stream()
                 .map(this::convertEntityToResponseDto)
                 .collect(Collectors.toList());
     }
     public List<EncounterResponseDto> getAllEncounterByPerson(Long personId) {
+        return getAllEncounterByPerson(personId, false);
+    }
+    public List<EncounterResponseDto> getAllEncounterByPerson(Long personId, boolean fullHistory) {
         Person person = personRepository
                 .findById(personId)
                 .orElseThrow(() -> new EntityNotFoundException(EncounterService.class, "errorMessage", "No Person with given Id " + personId));
         List<Encounter> personEncounters = encounterRepository.getEncounterByPersonAndArchived(person, 0);
-        return personEncounters
+        List<EncounterResponseDto> encounters = personEncounters
                 .stream()
                 .map(this::convertEntityToResponseDto)
                 .collect(Collectors.toList());
+        if (fullHistory) {
+            encounterRepository.findArchivedEncountersByPersonId(personId)
+                    .forEach(archived -> encounters.add(convertArchivedToResponseDto(personId, archived)));
+        }
+        return encounters;
     }
     public EncounterResponseDto getEncounterById(Long id) {
         return convertEntityToResponseDto(getExistEncounter(id));
@@ -102,10 +112,12 @@ public class EncounterService {
                 .map (this::convertEntityToResponseDto)
                 .collect (Collectors.toList ());
     }
+    @Transactional
     public void archivedEncounter(Long id) {
         Encounter existEncounter = getExistEncounter(id);
         existEncounter.setArchived(1);
         encounterRepository.save(existEncounter);
+        changeOutboxService.record(existEncounter, PatientChangeOutbox.UPDATE);
     }
     private Encounter getExistEncounter(Long id) {
         return encounterRepository.findById(id).orElseThrow(() -> new EntityNotFoundException(EncounterService.class, "errorMessage", "No encounter found with Id " + id));
@@ -120,6 +132,18 @@ public class EncounterService {
         encounter.setServiceCode(encounter.getServiceCode());
         return encounterRequestDto;
     }
+    static EncounterResponseDto convertArchivedToResponseDto(Long personId, ArchivedEncounterView archived) {
+        EncounterResponseDto encounterResponseDto = new EncounterResponseDto();
+        encounterResponseDto.setFacilityId(archived.getFacilityId());
+        encounterResponseDto.setId(archived.getId());
+        encounterResponseDto.setEncounterDate(archived.getEncounterDate().toLocalDate());
+        encounterResponseDto.setPersonId(personId);
+        encounterResponseDto.setUuid(archived.getUuid());
+        encounterResponseDto.setVisitId(archived.getVisitId());
+        encounterResponseDto.setServiceCode(archived.getServiceCode());
+        encounterResponseDto.setStatus(archived.getStatus());
+        return encounterResponseDto;
+    }
     private Encounter convertDtoToEntity(EncounterRequestDto encounterRequestDto) {
         Person person = personRepository
                 .findById(encounterRequestDto.getPersonId())
@@ -137,6 +161,7 @@ public class EncounterService {
         return encounter;
     }
     @PutMapping(value = "/encounter/status-update/{id}/{status}")
+    @Transactional
     public EncounterStatusResponseDto statusUpdate(@PathVariable Long id, @PathVariable String status) {
         Optional<Encounter> encounter = this.encounterRepository.findById(id);
         if ((status.equalsIgnoreCase("PENDING")) ||
@@ -144,6 +169,7 @@ public class EncounterService {
             encounter.map(encounter1 -> {
                 encounter1.setStatus(status);
                 this.encounterRepository.save(encounter1);
+                changeOutboxService.record(encounter1, PatientChangeOutbox.UPDATE);
                 return new EncounterStatusResponseDto(Boolean.TRUE, "Update was successful");
             });
         }
@@ -0,0 +1,45 @@
+package org.lamisplus.modules.patient.service;
+
+import lombok.RequiredArgsConstructor;
+import org.lamisplus.modules.base.domain.entities.User;
+import org.lamisplus.modules.base.service.UserService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Optional;
+
+/**
+ * The current user and facility, loaded once per HTTP request and kept in the request's attributes.
+ * Outside a request (scheduled or async work) every call loads the user again, as
+ * {@link UserService#getUserWithRoles()} did before.
+ */
+@Component
+@RequiredArgsConstructor
+public class FacilityContext {
+    private static final String ATTRIBUTE = FacilityContext.class.getName() + ".user";
+
+    private final UserService userService;
+
+    public Optional<User> getCurrentUser() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return userService.getUserWithRoles();
+        }
+        @SuppressWarnings("unchecked")
+        Optional<User> user = (Optional<User>) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (user == null) {
+            user = userService.getUserWithRoles();
+            attributes.setAttribute(ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+        return user;
+    }
+
+    /**
+     * The current user's organisation unit, or 0 when there is no current user, which matches no facility.
+     */
+    public Long getFacilityId() {
+        Optional<User> user = getCurrentUser();
+        return user.isPresent() ? user.get().getCurrentOrganisationUnitId() : 0L;
+    }
+}
@@ -0,0 +1,73 @@
+package org.lamisplus.modules.patient.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Keeps monthly partitions of patient_visit and patient_encounter created ahead of time,
+ * so new rows never fall into the default partition.
+ * Failures are counted in {@code patient.partitioning.failures}: until the next run succeeds, new rows of
+ * the missing months land in the default partition.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "patient.partitioning", name = "enabled", havingValue = "true")
+public class PartitionMaintenanceService {
+    private static final String[] PARTITIONED_TABLES = {"patient_visit", "patient_encounter"};
+
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${patient.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    private Counter failures;
+
+    @PostConstruct
+    public void init() {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            failures = Counter.builder("patient.partitioning.failures")
+                    .description("Runs that could not create the upcoming monthly partitions of a table")
+                    .register(registry);
+        }
+        createUpcomingPartitions();
+    }
+
+    @Scheduled(cron = "${patient.partitioning.cron:0 0 1 * * *}")
+    public void createUpcomingPartitions() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (String table : PARTITIONED_TABLES) {
+            try {
+                transactionTemplate.execute(status -> entityManager
+                        .createNativeQuery("SELECT COUNT(*) FROM patient_create_monthly_partitions(?1, CAST(now() AS date), ?2)")
+                        .setParameter(1, table)
+                        .setParameter(2, monthsAhead)
+                        .getSingleResult());
+            } catch (Exception e) {
+                log.error("could not create upcoming partitions for {}; new rows go to {}_default until this succeeds",
+                        table, table, e);
+                if (failures != null) {
+                    failures.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.lamisplus.modules.patient.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves closed visits older than the configured age, together with their encounters,
+ * into patient_visit_history and patient_encounter_history.
+ * Every chunk is its own transaction, so an interrupted run simply continues with the
+ * remaining visits the next time it runs.
+ * <p>
+ * Every moved row is recorded as an {@link PatientChangeOutbox#ARCHIVE} in patient_change_outbox within the same
+ * statement, never as a DELETE, so consumers keep the clinical history. The change feed only returns rows still
+ * in patient_visit and patient_encounter, so feed consumers do not see archived rows go.
+ * A row whose id is already in a history table fails its chunk and stops the run rather than being dropped.
+ * <p>
+ * Visits that another module's table still references are left in place: foreign keys to patient_visit, found in
+ * pg_constraint like the partitioning precondition does, and visit_id columns, the convention of the modules that
+ * reference visits by uuid without a foreign key. The references are looked up at the start of every run.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "patient.archive", name = "enabled", havingValue = "true")
+public class PatientArchiveService {
+    private static final String VISIT_COLUMNS =
+            "id, uuid, created_date, created_by, last_modified_date, last_modified_by, facility_id," +
+                    " person_uuid, visit_start_date, visit_end_date, archived";
+
+    private static final String ENCOUNTER_COLUMNS =
+            "id, uuid, created_date, created_by, last_modified_date, last_modified_by, facility_id," +
+                    " encounter_date, person_uuid, visit_id, service_code, status, archived";
+
+    private static final String PATIENT_TABLES = "'patient_visit', 'patient_visit_history', " +
+            "'patient_encounter', 'patient_encounter_history'";
+
+    private static final String VISIT_REFERENCES =
+            "SELECT referencing.relname, a.attname, referenced_column.attname, format_type(a.atttypid, a.atttypmod) " +
+                    "FROM pg_constraint c " +
+                    "JOIN pg_class referenced ON referenced.oid = c.confrelid " +
+                    "JOIN pg_class referencing ON referencing.oid = c.conrelid " +
+                    "JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = c.conkey[1] " +
+                    "JOIN pg_attribute referenced_column ON referenced_column.attrelid = c.confrelid " +
+                    "AND referenced_column.attnum = c.confkey[1] " +
+                    "WHERE c.contype = 'f' AND array_length(c.conkey, 1) = 1 AND referenced.relname = 'patient_visit' " +
+                    "AND referencing.relname NOT IN (" + PATIENT_TABLES + ") " +
+                    "UNION " +
+                    "SELECT table_name, column_name, CASE WHEN data_type IN ('bigint', 'integer') THEN 'id' ELSE 'uuid' END, " +
+                    "data_type FROM information_schema.columns " +
+                    "WHERE table_schema = current_schema() AND column_name = 'visit_id' " +
+                    "AND table_name NOT IN (" + PATIENT_TABLES + ")";
+
+    private static final String ARCHIVE_CLOSED_VISITS =
+            "WITH chunk AS (" +
+                    " SELECT id, uuid FROM patient_visit v" +
+                    " WHERE visit_end_date IS NOT NULL AND visit_end_date < ?1%s" +
+                    " ORDER BY id LIMIT ?2 FOR UPDATE SKIP LOCKED" +
+                    "), moved_encounters AS (" +
+                    " DELETE FROM patient_encounter e USING chunk WHERE e.visit_id = chunk.uuid" +
+                    " RETURNING " + prefixed("e", ENCOUNTER_COLUMNS) +
+                    "), archived_encounters AS (" +
+                    " INSERT INTO patient_encounter_history (" + ENCOUNTER_COLUMNS + ", archived_date)" +
+                    " SELECT " + ENCOUNTER_COLUMNS + ", now() FROM moved_encounters" +
+                    "), moved_visits AS (" +
+                    " DELETE FROM patient_visit v USING chunk WHERE v.id = chunk.id" +
+                    " RETURNING " + prefixed("v", VISIT_COLUMNS) +
+                    "), outbox AS (" +
+                    " INSERT INTO patient_change_outbox (entity_type, entity_uuid, facility_id, operation)" +
+                    " SELECT '" + PatientChangeOutbox.ENCOUNTER + "', CAST(uuid AS VARCHAR), facility_id, '" +
+                    PatientChangeOutbox.ARCHIVE + "' FROM moved_encounters" +
+                    " UNION ALL SELECT '" + PatientChangeOutbox.VISIT + "', CAST(uuid AS VARCHAR), facility_id, '" +
+                    PatientChangeOutbox.ARCHIVE + "' FROM moved_visits" +
+                    ") " +
+                    "INSERT INTO patient_visit_history (" + VISIT_COLUMNS + ", archived_date)" +
+                    " SELECT " + VISIT_COLUMNS + ", now() FROM moved_visits";
+
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${patient.archive.older-than-days:3650}")
+    private int olderThanDays;
+
+    @Value("${patient.archive.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${patient.archive.max-chunks-per-run:200}")
+    private int maxChunksPerRun;
+
+    private static String prefixed(String alias, String columns) {
+        return alias + "." + columns.replace(", ", ", " + alias + ".");
+    }
+
+    /**
+     * A NOT EXISTS condition on visit v per table and column of another module that references visits.
+     */
+    @SuppressWarnings("unchecked")
+    private String unreferencedVisits(TransactionTemplate transactionTemplate) {
+        List<Object[]> references = transactionTemplate.execute(status -> entityManager
+                .createNativeQuery(VISIT_REFERENCES)
+                .getResultList());
+        StringBuilder condition = new StringBuilder();
+        for (Object[] reference : references) {
+            String column = quoted((String) reference[1]);
+            String visitColumn = quoted((String) reference[2]);
+            // a VARCHAR reference is compared as text, so its own index can be used
+            String visitValue = "uuid".equals(reference[3]) || !"uuid".equals(reference[2])
+                    ? "v." + visitColumn : "CAST(v." + visitColumn + " AS VARCHAR)";
+            condition.append(" AND NOT EXISTS (SELECT 1 FROM ").append(quoted((String) reference[0]))
+                    .append(" r WHERE r.").append(column).append(" = ").append(visitValue).append(')');
+            log.debug("visits referenced from {}.{} are not archived", reference[0], reference[1]);
+        }
+        return condition.toString();
+    }
+
+    private static String quoted(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    @Scheduled(cron = "${patient.archive.cron:0 30 2 * * *}")
+    public void archiveClosedVisits() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(olderThanDays);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        String archiveClosedVisits;
+        try {
+            archiveClosedVisits = String.format(ARCHIVE_CLOSED_VISITS, unreferencedVisits(transactionTemplate));
+        } catch (Exception e) {
+            log.error("visit archiving skipped, references to patient_visit could not be read", e);
+            return;
+        }
+        long archived = 0;
+        for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+            Integer moved;
+            try {
+                moved = transactionTemplate.execute(status -> entityManager
+                        .createNativeQuery(archiveClosedVisits)
+                        .setParameter(1, cutoff)
+                        .setParameter(2, chunkSize)
+                        .executeUpdate());
+            } catch (Exception e) {
+                log.error("visit archiving stopped after {} visits: {}", archived, e.getMessage());
+                return;
+            }
+            archived += moved == null ? 0 : moved;
+            if (moved == null || moved < chunkSize) {
+                break;
+            }
+        }
+        log.info("archived {} visits closed before {}", archived, cutoff);
+    }
+}
@@ -0,0 +1,502 @@
+package org.lamisplus.modules.patient.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.lamisplus.modules.patient.domain.dto.BulkImportStats;
+import org.lamisplus.modules.patient.domain.dto.EncounterImportDto;
+import org.lamisplus.modules.patient.domain.dto.PersonImportDto;
+import org.lamisplus.modules.patient.domain.dto.VisitImportDto;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
+import org.lamisplus.modules.patient.utility.SecurityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Imports persons, visits and encounters received from facilities with batched
+ * {@code INSERT ... ON CONFLICT (uuid) DO UPDATE} statements instead of a lookup and a save per record.
+ * Visits and encounters refer to their person and visit by uuid.
+ * <p>
+ * An existing row is only overwritten when the incoming row is not older, by last_modified_date.
+ * Person and visit uuids referenced by a batch are checked with one query per table; rows whose references
+ * are not in the database are rejected instead of failing the batch.
+ * Rows missing a required value or with a malformed uuid are rejected before the batch is written.
+ * If a batch still fails (another constraint), it is retried row by row and the offending rows are rejected.
+ * The reasons for rejected rows are returned in the batch stats. Imports are restricted to administrators.
+ * Each batch commits on its own, so import persons before visits and visits before encounters.
+ * Written rows are recorded in patient_change_outbox by the same statement.
+ * <p>
+ * When patient_visit and patient_encounter are partitioned, uuid is only unique together with the date, so
+ * a row whose date changed is first moved to its new date instead of being inserted a second time.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PatientBulkImportService {
+    static final String[] PERSON_COLUMNS = {
+            "uuid", "created_date", "created_by", "last_modified_date", "last_modified_by", "facility_id",
+            "active", "contact_point", "address", "gender", "identifier", "deceased", "deceased_date_time",
+            "marital_status", "employment_status", "education", "sex", "organization", "contact",
+            "date_of_birth", "date_of_registration", "archived", "nin_number", "emr_id", "first_name", "surname",
+            "other_name", "hospital_number", "is_date_of_birth_estimated", "full_name", "reason", "latitude", "longitude"};
+
+    static final String[] VISIT_COLUMNS = {
+            "uuid", "created_date", "created_by", "last_modified_date", "last_modified_by", "facility_id",
+            "person_uuid", "visit_start_date", "visit_end_date", "archived"};
+
+    static final String[] ENCOUNTER_COLUMNS = {
+            "uuid", "created_date", "created_by", "last_modified_date", "last_modified_by", "facility_id",
+            "encounter_date", "person_uuid", "visit_id", "service_code", "status", "archived"};
+
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private static final Set<String> NOT_UPDATED = new HashSet<>(Arrays.asList("uuid", "created_date", "created_by"));
+
+    private static final String TABLE_INFO =
+            "SELECT c.relkind = 'p', format_type(a.atttypid, NULL) FROM pg_class c " +
+                    "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attname = 'uuid' WHERE c.oid = to_regclass(?)";
+
+    private final PlatformTransactionManager transactionManager;
+    private final AdminAccess adminAccess;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${patient.import.batch-size:1000}")
+    private int batchSize;
+
+    private final Map<String, TableInfo> tables = new ConcurrentHashMap<>();
+
+    public List<BulkImportStats> importPersons(List<PersonImportDto> persons) {
+        adminAccess.check("Patient import");
+        return importInBatches("person", persons, PatientBulkImportService::validatePerson, (connection, batch, stats) ->
+                upsert(connection, upsertSql(connection, "patient_person", PERSON_COLUMNS, null, PatientChangeOutbox.PERSON),
+                        batch, this::bindPerson, stats));
+    }
+
+    public List<BulkImportStats> importVisits(List<VisitImportDto> visits) {
+        adminAccess.check("Patient import");
+        return importInBatches("visit", visits, PatientBulkImportService::validateVisit, (connection, batch, stats) -> {
+            Set<String> persons = findExisting(connection, "patient_person",
+                    batch.stream().map(VisitImportDto::getPersonUuid));
+            List<VisitImportDto> resolved = new ArrayList<>(batch.size());
+            for (VisitImportDto visit : batch) {
+                if (persons.contains(normalize(visit.getPersonUuid()))) {
+                    resolved.add(visit);
+                } else {
+                    stats.rejectMissingReference("visit " + visit.getUuid() + ": person " + visit.getPersonUuid() + " not found");
+                }
+            }
+            resolved = keepUuidUnique(connection, "patient_visit", "visit_start_date", resolved,
+                    VisitImportDto::getUuid, VisitImportDto::getVisitStartDate, VisitImportDto::getLastModifiedDate, stats);
+            upsert(connection, upsertSql(connection, "patient_visit", VISIT_COLUMNS, "visit_start_date", PatientChangeOutbox.VISIT),
+                    resolved, this::bindVisit, stats);
+        });
+    }
+
+    public List<BulkImportStats> importEncounters(List<EncounterImportDto> encounters) {
+        adminAccess.check("Patient import");
+        return importInBatches("encounter", encounters, PatientBulkImportService::validateEncounter, (connection, batch, stats) -> {
+            Set<String> persons = findExisting(connection, "patient_person",
+                    batch.stream().map(EncounterImportDto::getPersonUuid));
+            Set<String> visits = findExisting(connection, "patient_visit",
+                    batch.stream().map(EncounterImportDto::getVisitUuid));
+            List<EncounterImportDto> resolved = new ArrayList<>(batch.size());
+            for (EncounterImportDto encounter : batch) {
+                if (!persons.contains(normalize(encounter.getPersonUuid()))) {
+                    stats.rejectMissingReference("encounter " + encounter.getUuid() + ": person " + encounter.getPersonUuid() + " not found");
+                } else if (!visits.contains(normalize(encounter.getVisitUuid()))) {
+                    stats.rejectMissingReference("encounter " + encounter.getUuid() + ": visit " + encounter.getVisitUuid() + " not found");
+                } else {
+                    resolved.add(encounter);
+                }
+            }
+            resolved = keepUuidUnique(connection, "patient_encounter", "encounter_date", resolved,
+                    EncounterImportDto::getUuid, EncounterImportDto::getEncounterDate, EncounterImportDto::getLastModifiedDate, stats);
+            upsert(connection, upsertSql(connection, "patient_encounter", ENCOUNTER_COLUMNS, "encounter_date", PatientChangeOutbox.ENCOUNTER),
+                    resolved, this::bindEncounter, stats);
+        });
+    }
+
+    private <T> List<BulkImportStats> importInBatches(String entity, List<T> rows, Function<T, String> validator,
+                                                      BatchImporter<T> importer) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<BulkImportStats> result = new ArrayList<>();
+        for (int from = 0, batch = 1; from < rows.size(); from += batchSize, batch++) {
+            List<T> rowsInBatch = rows.subList(from, Math.min(from + batchSize, rows.size()));
+            BulkImportStats stats = new BulkImportStats(entity, batch, rowsInBatch.size());
+            long start = System.currentTimeMillis();
+            List<T> validRows = new ArrayList<>(rowsInBatch.size());
+            for (int i = 0; i < rowsInBatch.size(); i++) {
+                T row = rowsInBatch.get(i);
+                String problem = row == null ? "empty row" : validator.apply(row);
+                if (problem == null) {
+                    validRows.add(row);
+                } else {
+                    stats.rejectInvalid(entity + " " + (from + i + 1) + ": " + problem);
+                }
+            }
+            transactionTemplate.execute(status -> {
+                entityManager.unwrap(Session.class).doWork(connection -> importer.importBatch(connection, validRows, stats));
+                return null;
+            });
+            stats.setElapsedMillis(System.currentTimeMillis() - start);
+            log.info("{} import batch {}: {} received, {} written, {} stale, {} missing reference, {} invalid in {} ms",
+                    entity, stats.getBatch(), stats.getReceived(), stats.getWritten(), stats.getSkippedStale(),
+                    stats.getRejectedMissingReference(), stats.getRejectedInvalid(), stats.getElapsedMillis());
+            result.add(stats);
+        }
+        return result;
+    }
+
+    private static String validatePerson(PersonImportDto person) {
+        return firstProblem(checkUuid("uuid", person.getUuid()),
+                person.getSex() == null ? "sex is required" : null,
+                person.getDateOfBirth() == null ? "dateOfBirth is required" : null,
+                person.getDateOfRegistration() == null ? "dateOfRegistration is required" : null);
+    }
+
+    private static String validateVisit(VisitImportDto visit) {
+        return firstProblem(checkUuid("uuid", visit.getUuid()),
+                checkUuid("personUuid", visit.getPersonUuid()),
+                visit.getVisitStartDate() == null ? "visitStartDate is required" : null);
+    }
+
+    private static String validateEncounter(EncounterImportDto encounter) {
+        return firstProblem(checkUuid("uuid", encounter.getUuid()),
+                checkUuid("personUuid", encounter.getPersonUuid()),
+                checkUuid("visitUuid", encounter.getVisitUuid()),
+                encounter.getEncounterDate() == null ? "encounterDate is required" : null,
+                encounter.getServiceCode() == null ? "serviceCode is required" : null,
+                encounter.getStatus() == null ? "status is required" : null);
+    }
+
+    private static String checkUuid(String field, String value) {
+        if (value == null) {
+            return field + " is required";
+        }
+        return UUID_PATTERN.matcher(value).matches() ? null : field + " " + value + " is not a uuid";
+    }
+
+    private static String firstProblem(String... problems) {
+        return Arrays.stream(problems).filter(Objects::nonNull).findFirst().orElse(null);
+    }
+
+    private <T> void upsert(Connection connection, String sql, List<T> rows, Binder<T> binder,
+                            BulkImportStats stats) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Savepoint savepoint = connection.setSavepoint();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (T row : rows) {
+                binder.bind(statement, row);
+                statement.addBatch();
+            }
+            for (int count : statement.executeBatch()) {
+                count(count, stats);
+            }
+            connection.releaseSavepoint(savepoint);
+        } catch (BatchUpdateException e) {
+            connection.rollback(savepoint);
+            log.warn("{} import batch {} failed ({}), retrying row by row",
+                    stats.getEntity(), stats.getBatch(), e.getNextException() != null ? e.getNextException().getMessage() : e.getMessage());
+            upsertRowByRow(connection, sql, rows, binder, stats);
+        }
+    }
+
+    private <T> void upsertRowByRow(Connection connection, String sql, List<T> rows, Binder<T> binder,
+                                    BulkImportStats stats) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (T row : rows) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    binder.bind(statement, row);
+                    count(statement.executeUpdate(), stats);
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    stats.rejectInvalid(stats.getEntity() + " " + uuidOf(row) + ": " + e.getMessage());
+                    log.debug("{} import rejected a row: {}", stats.getEntity(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void count(int updateCount, BulkImportStats stats) {
+        if (updateCount == 0) {
+            stats.setSkippedStale(stats.getSkippedStale() + 1);
+        } else {
+            stats.setWritten(stats.getWritten() + 1);
+        }
+    }
+
+    /**
+     * Returns which of the uuids exist in the table, with one query for the whole batch.
+     */
+    private Set<String> findExisting(Connection connection, String table, Stream<String> uuids)
+            throws SQLException {
+        Object[] values = uuids.filter(Objects::nonNull).distinct().toArray();
+        Set<String> existing = new HashSet<>();
+        if (values.length == 0) {
+            return existing;
+        }
+        String sql = "SELECT CAST(uuid AS VARCHAR) FROM " + table +
+                " WHERE uuid = ANY(CAST(? AS " + getTableInfo(connection, table).uuidType + "[]))";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setArray(1, connection.createArrayOf("varchar", values));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    existing.add(normalize(resultSet.getString(1)));
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * On a partitioned table the upsert conflicts on (uuid, date) only, so a uuid must not reach it with a
+     * different date than the stored row. Keeps the last row per uuid of the batch, moves stored rows to the
+     * incoming date unless the incoming row is older, and drops the older ones as stale.
+     */
+    private <T> List<T> keepUuidUnique(Connection connection, String table, String partitionKey, List<T> rows,
+                                       Function<T, String> uuid, Function<T, LocalDateTime> date,
+                                       Function<T, LocalDateTime> lastModifiedDate, BulkImportStats stats)
+            throws SQLException {
+        TableInfo info = getTableInfo(connection, table);
+        if (!info.partitioned || rows.isEmpty()) {
+            return rows;
+        }
+        Map<String, T> lastPerUuid = new LinkedHashMap<>();
+        List<T> unique = new ArrayList<>();
+        for (T row : rows) {
+            String key = normalize(uuid.apply(row));
+            if (key == null) {
+                unique.add(row);
+            } else if (lastPerUuid.put(key, row) != null) {
+                stats.setSkippedStale(stats.getSkippedStale() + 1);
+            }
+        }
+        unique.addAll(lastPerUuid.values());
+
+        String find = "SELECT CAST(uuid AS VARCHAR), " + partitionKey + ", last_modified_date FROM " + table +
+                " WHERE uuid = ANY(CAST(? AS " + info.uuidType + "[]))";
+        Map<String, LocalDateTime[]> stored = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(find)) {
+            statement.setArray(1, connection.createArrayOf("varchar", lastPerUuid.keySet().toArray()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    stored.put(normalize(resultSet.getString(1)), new LocalDateTime[]{
+                            toLocalDateTime(resultSet.getTimestamp(2)), toLocalDateTime(resultSet.getTimestamp(3))});
+                }
+            }
+        }
+
+        List<T> result = new ArrayList<>(unique.size());
+        String move = "UPDATE " + table + " SET " + partitionKey + " = ? WHERE uuid = ? AND " + partitionKey + " IS NOT DISTINCT FROM ?";
+        try (PreparedStatement statement = connection.prepareStatement(move)) {
+            int moves = 0;
+            for (T row : unique) {
+                LocalDateTime[] existing = stored.get(normalize(uuid.apply(row)));
+                if (existing == null || Objects.equals(existing[0], date.apply(row))) {
+                    result.add(row);
+                } else if (existing[1] != null && lastModifiedDate.apply(row) != null
+                        && existing[1].isAfter(lastModifiedDate.apply(row))) {
+                    stats.setSkippedStale(stats.getSkippedStale() + 1);
+                } else {
+                    setTimestamp(statement, 1, date.apply(row));
+                    statement.setObject(2, uuid.apply(row), Types.OTHER);
+                    setTimestamp(statement, 3, existing[0]);
+                    statement.addBatch();
+                    moves++;
+                    result.add(row);
+                }
+            }
+            if (moves > 0) {
+                statement.executeBatch();
+                log.debug("{} import batch {} moved {} rows to a new {}", stats.getEntity(), stats.getBatch(), moves, partitionKey);
+            }
+        }
+        return result;
+    }
+
+    private String upsertSql(Connection connection, String table, String[] columns, String partitionKey,
+                             String entityType) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(columns.length, "?"));
+        return PatientChangeOutboxService.recordingChanges(entityType,
+                "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + placeholders + ") " +
+                        upsertClause(connection, table, columns, partitionKey));
+    }
+
+    /**
+     * The ON CONFLICT clause that updates an existing row by uuid unless the incoming row is older.
+     */
+    String upsertClause(Connection connection, String table, String[] columns, String partitionKey)
+            throws SQLException {
+        String conflictTarget = partitionKey != null && getTableInfo(connection, table).partitioned
+                ? "uuid, " + partitionKey
+                : "uuid";
+        String updates = Arrays.stream(columns)
+                .filter(column -> !NOT_UPDATED.contains(column))
+                .map(column -> column + " = EXCLUDED." + column)
+                .collect(Collectors.joining(", "));
+        return "ON CONFLICT (" + conflictTarget + ") DO UPDATE SET " + updates +
+                " WHERE " + table + ".last_modified_date IS NULL OR EXCLUDED.last_modified_date IS NULL" +
+                " OR " + table + ".last_modified_date <= EXCLUDED.last_modified_date";
+    }
+
+    boolean isPartitioned(Connection connection, String table) throws SQLException {
+        return getTableInfo(connection, table).partitioned;
+    }
+
+    private TableInfo getTableInfo(Connection connection, String table) throws SQLException {
+        TableInfo info = tables.get(table);
+        if (info == null) {
+            try (PreparedStatement statement = connection.prepareStatement(TABLE_INFO)) {
+                statement.setString(1, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        throw new SQLException("Table " + table + " not found");
+                    }
+                    info = new TableInfo(resultSet.getBoolean(1), "uuid".equals(resultSet.getString(2)) ? "uuid" : "varchar");
+                }
+            }
+            tables.put(table, info);
+        }
+        return info;
+    }
+
+    private void bindPerson(PreparedStatement statement, PersonImportDto person) throws SQLException {
+        int i = bindAudit(statement, person.getUuid(), person.getCreatedDate(), person.getCreatedBy(),
+                person.getLastModifiedDate(), person.getLastModifiedBy(), person.getFacilityId());
+        statement.setObject(i++, person.getActive() != null ? person.getActive() : Boolean.FALSE, Types.BOOLEAN);
+        setJson(statement, i++, person.getContactPoint());
+        setJson(statement, i++, person.getAddress());
+        setJson(statement, i++, person.getGender());
+        setJson(statement, i++, person.getIdentifier());
+        statement.setObject(i++, person.getDeceased(), Types.BOOLEAN);
+        setTimestamp(statement, i++, person.getDeceasedDateTime());
+        setJson(statement, i++, person.getMaritalStatus());
+        setJson(statement, i++, person.getEmploymentStatus());
+        setJson(statement, i++, person.getEducation());
+        statement.setString(i++, person.getSex());
+        setJson(statement, i++, person.getOrganization());
+        setJson(statement, i++, person.getContact());
+        setDate(statement, i++, person.getDateOfBirth());
+        setDate(statement, i++, person.getDateOfRegistration());
+        statement.setObject(i++, person.getArchived(), Types.INTEGER);
+        statement.setString(i++, person.getNinNumber());
+        statement.setString(i++, person.getEmrId());
+        statement.setString(i++, person.getFirstName());
+        statement.setString(i++, person.getSurname());
+        statement.setString(i++, person.getOtherName());
+        statement.setString(i++, person.getHospitalNumber());
+        statement.setObject(i++, person.getIsDateOfBirthEstimated(), Types.BOOLEAN);
+        statement.setString(i++, person.getFullName());
+        statement.setString(i++, person.getReason());
+        statement.setString(i++, person.getLatitude());
+        statement.setString(i, person.getLongitude());
+    }
+
+    private void bindVisit(PreparedStatement statement, VisitImportDto visit) throws SQLException {
+        int i = bindAudit(statement, visit.getUuid(), visit.getCreatedDate(), visit.getCreatedBy(),
+                visit.getLastModifiedDate(), visit.getLastModifiedBy(), visit.getFacilityId());
+        statement.setObject(i++, visit.getPersonUuid(), Types.OTHER);
+        setTimestamp(statement, i++, visit.getVisitStartDate());
+        setTimestamp(statement, i++, visit.getVisitEndDate());
+        statement.setObject(i, visit.getArchived(), Types.INTEGER);
+    }
+
+    private void bindEncounter(PreparedStatement statement, EncounterImportDto encounter) throws SQLException {
+        int i = bindAudit(statement, encounter.getUuid(), encounter.getCreatedDate(), encounter.getCreatedBy(),
+                encounter.getLastModifiedDate(), encounter.getLastModifiedBy(), encounter.getFacilityId());
+        setTimestamp(statement, i++, encounter.getEncounterDate());
+        statement.setObject(i++, encounter.getPersonUuid(), Types.OTHER);
+        statement.setObject(i++, encounter.getVisitUuid(), Types.OTHER);
+        statement.setString(i++, encounter.getServiceCode());
+        statement.setString(i++, encounter.getStatus());
+        statement.setObject(i, encounter.getArchived(), Types.INTEGER);
+    }
+
+    /**
+     * Binds uuid and audit columns; audit values missing from the row are filled as a JPA save would.
+     */
+    private static int bindAudit(PreparedStatement statement, String uuid, LocalDateTime createdDate, String createdBy,
+                                 LocalDateTime lastModifiedDate, String lastModifiedBy, Long facilityId) throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        String login = createdBy != null && lastModifiedBy != null ? null : SecurityUtils.getCurrentUserLogin().orElse("");
+        statement.setObject(1, uuid, Types.OTHER);
+        setTimestamp(statement, 2, createdDate != null ? createdDate : now);
+        statement.setString(3, createdBy != null ? createdBy : login);
+        setTimestamp(statement, 4, lastModifiedDate != null ? lastModifiedDate : now);
+        statement.setString(5, lastModifiedBy != null ? lastModifiedBy : login);
+        statement.setObject(6, facilityId, Types.BIGINT);
+        return 7;
+    }
+
+    private static void setTimestamp(PreparedStatement statement, int index, LocalDateTime value) throws SQLException {
+        statement.setTimestamp(index, value == null ? null : Timestamp.valueOf(value));
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp value) {
+        return value == null ? null : value.toLocalDateTime();
+    }
+
+    private static void setDate(PreparedStatement statement, int index, LocalDate value) throws SQLException {
+        statement.setDate(index, value == null ? null : java.sql.Date.valueOf(value));
+    }
+
+    private static void setJson(PreparedStatement statement, int index, JsonNode value) throws SQLException {
+        statement.setObject(index, value == null || value.isNull() ? null : value.toString(), Types.OTHER);
+    }
+
+    private static String uuidOf(Object row) {
+        if (row instanceof PersonImportDto) {
+            return ((PersonImportDto) row).getUuid();
+        }
+        if (row instanceof VisitImportDto) {
+            return ((VisitImportDto) row).getUuid();
+        }
+        return row instanceof EncounterImportDto ? ((EncounterImportDto) row).getUuid() : String.valueOf(row);
+    }
+
+    private static String normalize(String uuid) {
+        return uuid == null ? null : uuid.toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    private interface BatchImporter<T> {
+        void importBatch(Connection connection, List<T> batch, BulkImportStats stats) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Binder<T> {
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
+
+    private static final class TableInfo {
+        private final boolean partitioned;
+        private final String uuidType;
+
+        private TableInfo(boolean partitioned, String uuidType) {
+            this.partitioned = partitioned;
+            this.uuidType = uuidType;
+        }
+    }
+}
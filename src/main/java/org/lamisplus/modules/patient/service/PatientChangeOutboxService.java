@@ -0,0 +1,135 @@
+package org.lamisplus.modules.patient.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.lamisplus.modules.base.controller.apierror.EntityNotFoundException;
+import org.lamisplus.modules.patient.domain.entity.*;
+import org.lamisplus.modules.patient.repository.PatientChangeOutboxConsumerRepository;
+import org.lamisplus.modules.patient.repository.PatientChangeOutboxRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Records person, visit and encounter changes in patient_change_outbox as part of the transaction that makes them,
+ * and lets named consumers read the outbox and acknowledge what they have processed. Consumers are registered by an
+ * administrator before their first read, so that acknowledged rows are only purged once every registered consumer
+ * is past them; only administrators can acknowledge.
+ * <p>
+ * Besides the JPA saves, the bulk import, the COPY import and the archive record their rows in the outbox with
+ * SQL in the same statement that writes them.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PatientChangeOutboxService {
+    private final PatientChangeOutboxRepository outboxRepository;
+    private final PatientChangeOutboxConsumerRepository consumerRepository;
+    private final AdminAccess adminAccess;
+
+    @Value("${patient.change-outbox.batch-size:500}")
+    private int defaultBatchSize;
+
+    @Value("${patient.change-outbox.purge-acknowledged:true}")
+    private boolean purgeAcknowledged;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Person person, String operation) {
+        record(PatientChangeOutbox.PERSON, person.getUuid(), person.getFacilityId(), operation);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Visit visit, String operation) {
+        record(PatientChangeOutbox.VISIT, visit.getUuid(), visit.getFacilityId(), operation);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Encounter encounter, String operation) {
+        record(PatientChangeOutbox.ENCOUNTER, encounter.getUuid(), encounter.getFacilityId(), operation);
+    }
+
+    private void record(String entityType, String uuid, Long facilityId, String operation) {
+        outboxRepository.save(PatientChangeOutbox.builder()
+                .entityType(entityType)
+                .entityUuid(uuid)
+                .facilityId(facilityId)
+                .operation(operation)
+                .build());
+    }
+
+    /**
+     * Registers a consumer at the start of the outbox, or returns it when it is registered already. From now on
+     * no row is purged before this consumer acknowledged it.
+     */
+    @Transactional
+    public PatientChangeOutboxConsumer register(String consumerName) {
+        adminAccess.check("Change outbox consumer registration");
+        return consumerRepository.findById(consumerName)
+                .orElseGet(() -> consumerRepository.save(new PatientChangeOutboxConsumer(consumerName, 0L, 0L, null)));
+    }
+
+    /**
+     * Returns the changes after the consumer's last acknowledged position, in (transaction, sequence id) order.
+     * Changes of transactions that started after the oldest one still running are held back until it ends:
+     * sequence ids are taken before commit, so a later commit could otherwise add a row behind the position.
+     * Not read-only, so it stays on the primary: the running transactions are those of the primary.
+     */
+    @Transactional
+    public List<PatientChangeOutbox> read(String consumerName, Long facilityId, Integer batchSize) {
+        PatientChangeOutboxConsumer consumer = getConsumer(consumerName);
+        int limit = batchSize == null || batchSize <= 0 ? defaultBatchSize : batchSize;
+        if (facilityId == null) {
+            return outboxRepository.findCommittedAfter(
+                    consumer.getLastTransactionId(), consumer.getLastSequenceId(), limit);
+        }
+        return outboxRepository.findCommittedAfterByFacility(
+                facilityId, consumer.getLastTransactionId(), consumer.getLastSequenceId(), limit);
+    }
+
+    /**
+     * Moves the consumer's position forward to the given sequence id; positions never move backwards.
+     * Outbox rows acknowledged by every consumer are then purged.
+     */
+    @Transactional
+    public void acknowledge(String consumerName, Long sequenceId) {
+        adminAccess.check("Change outbox acknowledgement");
+        PatientChangeOutboxConsumer consumer = getConsumer(consumerName);
+        // a row that is gone was purged, so every consumer is past it already
+        outboxRepository.findById(sequenceId).ifPresent(change -> {
+            int compared = change.getTransactionId().compareTo(consumer.getLastTransactionId());
+            if (compared > 0 || compared == 0 && sequenceId > consumer.getLastSequenceId()) {
+                consumer.setLastTransactionId(change.getTransactionId());
+                consumer.setLastSequenceId(sequenceId);
+            }
+        });
+        consumer.setLastAcknowledgedDate(LocalDateTime.now());
+        consumerRepository.save(consumer);
+        if (purgeAcknowledged) {
+            consumerRepository.flush();
+            int purged = outboxRepository.deleteAcknowledged();
+            log.debug("purged {} acknowledged patient change outbox rows", purged);
+        }
+    }
+
+    /**
+     * Wraps an {@code INSERT ... ON CONFLICT DO UPDATE} statement so every row it writes is recorded in the outbox
+     * by the same statement. The update count stays the number of rows written.
+     */
+    static String recordingChanges(String entityType, String upsert) {
+        return "WITH written AS (" + upsert + " RETURNING CAST(uuid AS VARCHAR) AS uuid, facility_id, xmax = 0 AS inserted) " +
+                "INSERT INTO patient_change_outbox (entity_type, entity_uuid, facility_id, operation) " +
+                "SELECT '" + entityType + "', uuid, facility_id, " +
+                "CASE WHEN inserted THEN '" + PatientChangeOutbox.INSERT + "' ELSE '" + PatientChangeOutbox.UPDATE + "' END " +
+                "FROM written";
+    }
+
+    private PatientChangeOutboxConsumer getConsumer(String consumerName) {
+        return consumerRepository.findById(consumerName)
+                .orElseThrow(() -> new EntityNotFoundException(PatientChangeOutboxService.class, "errorMessage",
+                        "Change outbox consumer " + consumerName + " is not registered"));
+    }
+}
@@ -0,0 +1,265 @@
+package org.lamisplus.modules.patient.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.lamisplus.modules.patient.domain.dto.BulkImportStats;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Moves patient_person, patient_visit and patient_encounter wholesale with PostgreSQL COPY.
+ * <p>
+ * An export is a zip with one COPY stream per table, written in foreign key order (person, visit, encounter).
+ * An import reads the entries in that order into temporary staging tables and merges them by uuid:
+ * the local ids are kept or newly generated, and rows are matched on uuid only, which is also what the
+ * person_uuid and visit_id references point to. Rows whose person or visit is missing are skipped,
+ * and existing rows are only overwritten by rows that are not older. Of several rows with the same uuid only the
+ * most recently modified one is imported. Written rows are recorded in
+ * patient_change_outbox by the same statement.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PatientCopyService {
+    public static final String CSV = "csv";
+    public static final String BINARY = "binary";
+    private static final long EXPORT_STREAM_TIMEOUT_SECONDS = 60;
+
+    private static final List<CopyTable> TABLES = Arrays.asList(
+            new CopyTable("patient_person", PatientChangeOutbox.PERSON, PatientBulkImportService.PERSON_COLUMNS, null, null),
+            new CopyTable("patient_visit", PatientChangeOutbox.VISIT, PatientBulkImportService.VISIT_COLUMNS, "visit_start_date",
+                    "EXISTS (SELECT 1 FROM patient_person p WHERE p.uuid = s.person_uuid)"),
+            new CopyTable("patient_encounter", PatientChangeOutbox.ENCOUNTER, PatientBulkImportService.ENCOUNTER_COLUMNS, "encounter_date",
+                    "EXISTS (SELECT 1 FROM patient_person p WHERE p.uuid = s.person_uuid) " +
+                            "AND EXISTS (SELECT 1 FROM patient_visit v WHERE v.uuid = s.visit_id)"));
+
+    private final PlatformTransactionManager transactionManager;
+    private final PatientBulkImportService bulkImportService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Writes the three tables, optionally limited to one facility, to the output as a zip of COPY streams.
+     */
+    public void exportTables(Long facilityId, String format, OutputStream outputStream) {
+        String options = copyOptions(format);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.execute(status -> {
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                CopyManager copyManager = getCopyManager(connection);
+                ZipOutputStream zip = new ZipOutputStream(outputStream);
+                try {
+                    for (CopyTable table : TABLES) {
+                        zip.putNextEntry(new ZipEntry(table.name + "." + format));
+                        String query = "SELECT " + table.columnList() + " FROM " + table.name +
+                                (facilityId != null ? " WHERE facility_id = " + facilityId.longValue() : "") +
+                                " ORDER BY id";
+                        long rows = copyManager.copyOut("COPY (" + query + ") TO STDOUT WITH (" + options + ")", zip);
+                        zip.closeEntry();
+                        log.info("exported {} rows from {}", rows, table.name);
+                    }
+                    zip.finish();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@link #exportTables} on the export executor, so that concurrent exports are bounded by its pool and a
+     * further one is refused at once with a TaskRejectedException. The export starts writing once the response
+     * stream is handed over through {@code output}.
+     */
+    @Async("exportExecutor")
+    public CompletableFuture<Void> exportTablesAsync(Long facilityId, String format, CompletableFuture<OutputStream> output)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        exportTables(facilityId, format, output.get(EXPORT_STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public void exportToFile(Long facilityId, String format, Path file) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            exportTables(facilityId, format, outputStream);
+        }
+    }
+
+    public List<BulkImportStats> importFromFile(String format, Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return importTables(format, inputStream);
+        }
+    }
+
+    /**
+     * Loads an export produced by {@link #exportTables} in one transaction.
+     */
+    public List<BulkImportStats> importTables(String format, InputStream inputStream) {
+        String options = copyOptions(format);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        return transactionTemplate.execute(status -> {
+            List<BulkImportStats> result = new ArrayList<>();
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                CopyManager copyManager = getCopyManager(connection);
+                ZipInputStream zip = new ZipInputStream(inputStream);
+                try {
+                    int expected = 0;
+                    for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                        CopyTable table = TABLES.get(expected);
+                        if (!entry.getName().equals(table.name + "." + format)) {
+                            throw new IllegalArgumentException("Expected " + table.name + "." + format +
+                                    " but found " + entry.getName() + "; tables must be in foreign key order");
+                        }
+                        result.add(importTable(connection, copyManager, table, options, new NonClosingInputStream(zip)));
+                        if (++expected == TABLES.size()) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return result;
+        });
+    }
+
+    private BulkImportStats importTable(Connection connection, CopyManager copyManager, CopyTable table,
+                                        String options, InputStream data) throws SQLException, IOException {
+        String staging = table.name + "_import";
+        BulkImportStats stats = new BulkImportStats(table.name, 1, 0);
+        long start = System.currentTimeMillis();
+        try (Statement statement = connection.createStatement()) {
+            String columns = table.columnList();
+            // only the copied columns, so the id and its identity or sequence default stay out of the staging table
+            statement.execute("CREATE TEMP TABLE " + staging + " ON COMMIT DROP AS SELECT " + columns +
+                    " FROM " + table.name + " WITH NO DATA");
+            stats.setReceived((int) copyManager.copyIn(
+                    "COPY " + staging + " (" + columns + ") FROM STDIN WITH (" + options + ")", data));
+            // ON CONFLICT DO UPDATE cannot touch a row twice in one statement, so keep the newest row per uuid
+            int duplicates = statement.executeUpdate("DELETE FROM " + staging + " s USING (" +
+                    "SELECT ctid, row_number() OVER (PARTITION BY uuid ORDER BY last_modified_date DESC NULLS LAST) AS n" +
+                    " FROM " + staging + ") d WHERE s.ctid = d.ctid AND d.n > 1");
+            String conditions = table.referenceCheck != null ? table.referenceCheck : "true";
+            if (table.partitionKey != null && bulkImportService.isPartitioned(connection, table.name)) {
+                conditions += " AND " + movePartitionKeys(statement, table, staging);
+            }
+            String sourceColumns = Arrays.stream(table.columns).map(column -> "s." + column).collect(Collectors.joining(", "));
+            int written = statement.executeUpdate(PatientChangeOutboxService.recordingChanges(table.entityType,
+                    "INSERT INTO " + table.name + " (" + columns + ") " +
+                            "SELECT " + sourceColumns + " FROM " + staging + " s WHERE " + conditions + " " +
+                            bulkImportService.upsertClause(connection, table.name, table.columns, table.partitionKey)));
+            stats.setWritten(written);
+            if (table.referenceCheck != null) {
+                try (ResultSet missing = statement.executeQuery(
+                        "SELECT COUNT(*) FROM " + staging + " s WHERE NOT (" + table.referenceCheck + ")")) {
+                    missing.next();
+                    stats.setRejectedMissingReference(missing.getInt(1));
+                }
+            }
+            // duplicates of a uuid count as stale, like rows older than the stored one
+            stats.setSkippedStale(stats.getReceived() - stats.getWritten() - stats.getRejectedMissingReference());
+            log.debug("dropped {} duplicate uuids from {}", duplicates, staging);
+        }
+        stats.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("imported {}: {} received, {} written, {} stale, {} missing reference in {} ms", table.name,
+                stats.getReceived(), stats.getWritten(), stats.getSkippedStale(),
+                stats.getRejectedMissingReference(), stats.getElapsedMillis());
+        return stats;
+    }
+
+    /**
+     * On a partitioned table uuid is only unique together with the date. Moves stored rows whose date changed to
+     * the imported date, unless the imported row is older, and returns the condition that keeps the remaining
+     * (stale) rows with a different date out of the upsert, which would otherwise insert them a second time.
+     */
+    private static String movePartitionKeys(Statement statement, CopyTable table, String staging) throws SQLException {
+        String key = table.partitionKey;
+        int moved = statement.executeUpdate("UPDATE " + table.name + " t SET " + key + " = s." + key +
+                " FROM " + staging + " s WHERE t.uuid = s.uuid AND t." + key + " IS DISTINCT FROM s." + key +
+                " AND (t.last_modified_date IS NULL OR s.last_modified_date IS NULL" +
+                " OR t.last_modified_date <= s.last_modified_date)");
+        log.debug("moved {} rows of {} to a new {}", moved, table.name, key);
+        return "NOT EXISTS (SELECT 1 FROM " + table.name + " t WHERE t.uuid = s.uuid AND t." + key +
+                " IS DISTINCT FROM s." + key + ")";
+    }
+
+    private static CopyManager getCopyManager(Connection connection) throws SQLException {
+        return connection.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    private static String copyOptions(String format) {
+        if (CSV.equals(format)) {
+            return "FORMAT csv, HEADER true";
+        }
+        if (BINARY.equals(format)) {
+            return "FORMAT binary";
+        }
+        throw new IllegalArgumentException("Unsupported copy format " + format);
+    }
+
+    private static final class CopyTable {
+        private final String name;
+        private final String entityType;
+        private final String[] columns;
+        private final String partitionKey;
+        private final String referenceCheck;
+
+        private CopyTable(String name, String entityType, String[] columns, String partitionKey, String referenceCheck) {
+            this.name = name;
+            this.entityType = entityType;
+            this.columns = columns;
+            this.partitionKey = partitionKey;
+            this.referenceCheck = referenceCheck;
+        }
+
+        private String columnList() {
+            return String.join(", ", columns);
+        }
+    }
+
+    /**
+     * CopyManager reads its input to the end; this keeps it from closing the zip stream after one entry.
+     */
+    private static final class NonClosingInputStream extends FilterInputStream {
+        private NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -13,22 +13,24 @@ import org.lamisplus.modules.base.domain.entities.User;
 import org.lamisplus.modules.base.domain.repositories.ApplicationCodesetRepository;
 import org.lamisplus.modules.base.domain.repositories.OrganisationUnitRepository;
 import org.lamisplus.modules.base.service.MenuService;
-import org.lamisplus.modules.base.service.UserService;
 //import org.lamisplus.modules.base.domain.dto.;
 import org.lamisplus.modules.patient.domain.dto.*;
 import org.lamisplus.modules.patient.domain.entity.Encounter;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.domain.entity.Visit;
 import org.lamisplus.modules.patient.repository.EncounterRepository;
 import org.lamisplus.modules.patient.repository.PersonRepository;
 import org.lamisplus.modules.patient.repository.VisitRepository;
+import org.lamisplus.modules.patient.utility.HttpCaching;
+import org.lamisplus.modules.patient.utility.PatientUuid;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.Map;
 import java.util.HashMap;
@@ -47,13 +49,16 @@ public class PersonService {
     private final VisitRepository visitRepository;
 
     private final EncounterRepository encounterRepository;
-    private final UserService userService;
+    private final FacilityContext facilityContext;
 
     private final MenuService menuService;
 
+    private final PatientChangeOutboxService changeOutboxService;
+
+    @Transactional
     public PersonResponseDto createPerson(PersonDto personDto) {
         Person person = getPersonFromDto(personDto);
-        Optional<User> currentUser = userService.getUserWithRoles();
+        Optional<User> currentUser = facilityContext.getCurrentUser();
         if (currentUser.isPresent()) {
             log.info("currentUser: " + currentUser.get());
             User user = currentUser.get();
@@ -62,12 +67,15 @@ public class PersonService {
         }
         String hospitalNumber = getHospitalNumber(personDto);
         person.setHospitalNumber(hospitalNumber);
-        person.setUuid(UUID.randomUUID().toString());
+        person.setUuid(PatientUuid.next());
         person.setFullName(this.getFullName(personDto.getFirstName(), personDto.getOtherName(), personDto.getSurname()));
-        return getDtoFromPerson(personRepository.save(person));
+        Person savedPerson = personRepository.save(person);
+        changeOutboxService.record(savedPerson, PatientChangeOutbox.INSERT);
+        return getDtoFromPerson(savedPerson);
     }
 
 
+    @Transactional
     public PersonResponseDto updatePerson(Long id, PersonDto personDto) {
         Person existPerson = personRepository
                 .findById(id).orElseThrow(() -> new EntityNotFoundException(PersonService.class, PERSON_NOT_FOUND_MESSAGE + id));
@@ -78,7 +86,9 @@ public class PersonService {
         person.setCreatedDate(existPerson.getCreatedDate());
         person.setArchived(existPerson.getArchived());
         person.setFacilityId(existPerson.getFacilityId());
-        return getDtoFromPerson(personRepository.save(person));
+        Person savedPerson = personRepository.save(person);
+        changeOutboxService.record(savedPerson, PatientChangeOutbox.UPDATE);
+        return getDtoFromPerson(savedPerson);
     }
 
 
@@ -90,16 +100,11 @@ public class PersonService {
     }
 
     //ResponseEntity<PersonMetaDataDto>
+    @Transactional(readOnly = true)
     public PersonMetaDataDto getAllPersonPageable(int pageNo, int pageSize) {
         //Person person = getPerson(personId);
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> person = personRepository.getAllByArchivedAndFacilityIdOrderByIdDesc(0, currentOrganisationUnitId, paging);
         if (person.hasContent()) {
 
@@ -138,6 +143,17 @@ public class PersonService {
     }
 
 
+    /**
+     * The version of {@link #getPersonById(Long)}'s response, read without loading the person's JSONB columns.
+     */
+    public Optional<ResourceVersion> getPersonVersion(Long id) {
+        return personRepository.findPersonVersion(id)
+                .map(view -> new ResourceVersion(
+                        HttpCaching.eTag(view.getDetail(), getPatientBiometricStatus(view.getUuid())),
+                        view.getLastModifiedDate()));
+    }
+
+    @Transactional
     public void deletePersonById(Long id, String message) {
         Person person = personRepository
                 .findById(id)
@@ -145,14 +161,17 @@ public class PersonService {
         person.setArchived(1);
         person.setReason(message);
         personRepository.save(person);
+        changeOutboxService.record(person, PatientChangeOutbox.UPDATE);
     }
 
+    @Transactional
     public void deletePersonById2(Long id) {
         Person person = personRepository
                 .findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(PersonService.class, "errorMessage", PERSON_NOT_FOUND_MESSAGE + id));
         person.setArchived(2);
         personRepository.save(person);
+        changeOutboxService.record(person, PatientChangeOutbox.UPDATE);
     }
 
     private String getHospitalNumber(PersonDto personDto) {
@@ -270,7 +289,7 @@ public class PersonService {
 //        Optional<Visit> visit = visitRepository.findVisitByPersonAndVisitStartDateNotNullAndVisitEndDateIsNull(person);
 //        log.info("visit id {}", visit.get().getId());
         PersonResponseDto personResponseDto = new PersonResponseDto();
-        Optional<Visit> visit = visitRepository.getRecentPatientVisit(person.getUuid());
+        Optional<Visit> visit = visitRepository.findFirstByPersonAndArchivedAndVisitStartDateNotNullOrderByLastModifiedDateDesc(person, 0);
            if (visit.isPresent()) {
                //log.info("visit id {}", visit.get().getId());
                personResponseDto.setVisitId(visit.get().getId());
@@ -365,7 +384,7 @@ public class PersonService {
 
     public boolean isNINExisting(String nin) {
         List<Person> person = personRepository.getPersonByNinNumber(nin);
-        System.out.println("Size = " + person.size());
+        log.debug("persons with nin: {}", person.size());
         boolean reply = false;
         if (person.isEmpty()) reply = false;
         else reply = true;
@@ -386,15 +405,10 @@ public class PersonService {
                 .totalPages(totalPages).build();
     }
 
+    @Transactional(readOnly = true)
     public PersonMetaDataDto findPersonBySearchParam(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         String queryParam = "";
         Page<Person> person = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
@@ -428,13 +442,7 @@ public class PersonService {
     public PersonMetaDataDto getAllActiveVisit(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
         ArrayList<PersonResponseDto> checkedInPeople = new ArrayList<>();
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> person = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
             searchValue = searchValue.replaceAll("\\s", "");
@@ -500,7 +508,7 @@ public class PersonService {
 //    }
 
     public Page toPage(List list, Pageable pageable) {
-        System.out.println("List Size Before= " + list.size());
+        log.debug("paging {} items", list.size());
         if (pageable.getOffset() >= list.size()) {
             return Page.empty();
         }
@@ -509,19 +517,14 @@ public class PersonService {
                 list.size() :
                 pageable.getOffset() + pageable.getPageSize());
         List subList = list.subList(startIndex, endIndex);
-        System.out.println("SubList Size After= " + subList.size());
+        log.debug("page holds {} items", subList.size());
         return new PageImpl(subList, pageable, list.size());
     }
 
+    @Transactional(readOnly = true)
     public PersonMetaDataDto getDuplicateHospitalNumbers(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> persons = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
             searchValue = searchValue.replaceAll("\\s", "");
@@ -562,15 +565,10 @@ public class PersonService {
     }
 
 
+    @Transactional(readOnly = true)
     public PersonMetaDataDto getAllPatientWithBiomentic(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> persons = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
             searchValue = searchValue.replaceAll("\\s", "");
@@ -579,7 +577,7 @@ public class PersonService {
             persons = personRepository.findPersonWithBiometricsUsingSearchParam(queryParam, 0, currentOrganisationUnitId, paging);
         } else {
             persons = personRepository.findPersonWithBiometrics(0, currentOrganisationUnitId, paging);
-            System.out.println("Testng the number of records "+persons.getNumberOfElements());
+            log.debug("persons with biometrics on page: {}", persons.getNumberOfElements());
 
         }
 //        List<PersonResponseDto> personResponseDtoList = new ArrayList<>();
@@ -601,15 +599,10 @@ public class PersonService {
         return personMetaDataDto;
         //return checkedInPeople;
     }
+    @Transactional(readOnly = true)
     public PersonMetaDataDto getAllPatientWithIncompleteBiomentic(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> persons = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
             searchValue = searchValue.replaceAll("\\s", "");
@@ -642,15 +635,10 @@ public class PersonService {
     }
 
 
+    @Transactional(readOnly = true)
     public PersonMetaDataDto getAllPatientWithoutBiomentic(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> persons = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
             searchValue = searchValue.replaceAll("\\s", "");
@@ -682,15 +670,10 @@ public class PersonService {
         //return checkedInPeople;
     }
 
+    @Transactional(readOnly = true)
     public PersonMetaDataDto getAllPatientWithoutRecapture(String searchValue, int pageNo, int pageSize) {
         Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
-
-        }
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         Page<Person> persons = null;
         if (!((searchValue == null) || (searchValue.equals("*")))) {
             searchValue = searchValue.replaceAll("\\s", "");
@@ -717,6 +700,17 @@ public class PersonService {
         return personRepository.findByUuid(uuid);
     }
 
+    /**
+     * ETag only: imported rows can carry a modification date older than the newest one, so a Last-Modified of
+     * MAX(last_modified_date) would answer If-Modified-Since with a wrong 304.
+     */
+    @Transactional(readOnly = true)
+    public Optional<ResourceVersion> getRegistrationStatsVersion() {
+        ResourceVersionView view = personRepository.findRegistrationStatsVersion();
+        return Optional.of(new ResourceVersion(HttpCaching.eTag(view.getDetail(), view.getLastModifiedDate()), null));
+    }
+
+    @Transactional(readOnly = true)
     public List<Map<String, Object>> countRegistrationsBySex() {
         List<Object[]> result = personRepository.countRegistrationsBySex();
         List<Map<String, Object>> formattedResult = new ArrayList<>();
@@ -731,6 +725,7 @@ public class PersonService {
         return formattedResult;
     }
 
+    @Transactional(readOnly = true)
     public List<Map<String, Object>> countRegistrationsByYearAndSex() {
         List<Object[]> result = personRepository.countRegistrationsByYearAndSex();
         List<Map<String, Object>> formattedResult = new ArrayList<>();
@@ -0,0 +1,116 @@
+package org.lamisplus.modules.patient.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.lamisplus.modules.patient.domain.dto.HibernateStatisticsDto;
+import org.lamisplus.modules.patient.domain.dto.SlowQueryDto;
+import org.lamisplus.modules.patient.utility.SecurityUtils;
+import org.lamisplus.modules.patient.utility.SlowQueryLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Triage view of the database work of the application: Hibernate statistics, switched on at startup only when
+ * patient.diagnostics.statistics-enabled is true as they add bookkeeping to every statement and session, and the
+ * slow statements captured by {@link SlowQueryLog}. Restricted to administrators, see {@link AdminAccess}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class QueryDiagnosticsService {
+    private static final String OPERATION = "Query diagnostics";
+
+    private final AdminAccess adminAccess;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${patient.diagnostics.statistics-enabled:false}")
+    private boolean statisticsEnabled;
+
+    @Value("${patient.diagnostics.slow-query-threshold-millis:500}")
+    private long slowQueryThresholdMillis;
+
+    @Value("${patient.diagnostics.slow-query-capacity:200}")
+    private int slowQueryCapacity;
+
+    @PostConstruct
+    public void init() {
+        SlowQueryLog.configure(slowQueryThresholdMillis, slowQueryCapacity);
+        if (statisticsEnabled) {
+            getStatistics().setStatisticsEnabled(true);
+            log.info("Hibernate statistics enabled; statements over {} ms are kept in the slow query log",
+                    slowQueryThresholdMillis);
+        }
+    }
+
+    public HibernateStatisticsDto getHibernateStatistics(int maxQueries) {
+        adminAccess.check(OPERATION);
+        Statistics statistics = getStatistics();
+        HibernateStatisticsDto dto = new HibernateStatisticsDto();
+        dto.setEnabled(statistics.isStatisticsEnabled());
+        dto.setSince(Instant.ofEpochMilli(statistics.getStartTime()));
+        dto.setSessionOpenCount(statistics.getSessionOpenCount());
+        dto.setTransactionCount(statistics.getTransactionCount());
+        dto.setConnectCount(statistics.getConnectCount());
+        dto.setPrepareStatementCount(statistics.getPrepareStatementCount());
+        dto.setFlushCount(statistics.getFlushCount());
+        dto.setEntityLoadCount(statistics.getEntityLoadCount());
+        dto.setEntityFetchCount(statistics.getEntityFetchCount());
+        dto.setCollectionLoadCount(statistics.getCollectionLoadCount());
+        dto.setCollectionFetchCount(statistics.getCollectionFetchCount());
+        dto.setQueryExecutionCount(statistics.getQueryExecutionCount());
+        dto.setQueryExecutionMaxTime(statistics.getQueryExecutionMaxTime());
+        dto.setQueryExecutionMaxTimeQueryString(statistics.getQueryExecutionMaxTimeQueryString());
+        dto.setSecondLevelCacheHitCount(statistics.getSecondLevelCacheHitCount());
+        dto.setSecondLevelCacheMissCount(statistics.getSecondLevelCacheMissCount());
+        dto.setQueries(Arrays.stream(statistics.getQueries())
+                .map(query -> toQueryStatistics(query, statistics.getQueryStatistics(query)))
+                .sorted(Comparator.comparingLong(HibernateStatisticsDto.QueryStatistics::getExecutionTotalTime).reversed())
+                .limit(maxQueries)
+                .collect(Collectors.toList()));
+        return dto;
+    }
+
+    public List<SlowQueryDto> getSlowQueries() {
+        adminAccess.check(OPERATION);
+        return SlowQueryLog.getEntries();
+    }
+
+    /**
+     * Clears the Hibernate statistics and the slow query log, e.g. before reproducing a reported slowdown.
+     */
+    public void reset() {
+        adminAccess.check(OPERATION);
+        getStatistics().clear();
+        SlowQueryLog.clear();
+        log.info("query statistics reset by {}", SecurityUtils.getCurrentUserLogin().orElse("unknown"));
+    }
+
+    private static HibernateStatisticsDto.QueryStatistics toQueryStatistics(String query, QueryStatistics statistics) {
+        HibernateStatisticsDto.QueryStatistics dto = new HibernateStatisticsDto.QueryStatistics();
+        dto.setQuery(query);
+        dto.setExecutionCount(statistics.getExecutionCount());
+        dto.setExecutionRowCount(statistics.getExecutionRowCount());
+        dto.setExecutionAvgTime(statistics.getExecutionAvgTime());
+        dto.setExecutionMaxTime(statistics.getExecutionMaxTime());
+        dto.setExecutionTotalTime(statistics.getExecutionAvgTime() * statistics.getExecutionCount());
+        return dto;
+    }
+
+    private Statistics getStatistics() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+}
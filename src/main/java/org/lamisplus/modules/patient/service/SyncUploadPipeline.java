@@ -0,0 +1,319 @@
+package org.lamisplus.modules.patient.service;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import org.lamisplus.modules.patient.config.ExecutorProperties;
+import org.lamisplus.modules.patient.domain.dto.ChangeFeedBatch;
+import org.lamisplus.modules.patient.utility.HttpConnectionManager;
+import org.lamisplus.modules.patient.utility.SyncPayloadCodec;
+import org.lamisplus.modules.patient.utility.SyncPayloadFormat;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Uploads a change feed through a reader, serializer, compressor and uploader stage connected by bounded queues.
+ * A stage blocks when the queue in front of the next stage is full, so a slow link throttles the database reader
+ * instead of letting batches pile up in memory. Batches may finish out of order; the returned resume token is
+ * that of the last batch before which every batch was uploaded, so a failed run can be repeated from there.
+ * <p>
+ * The stages run on the sync executor. A run is only admitted when all of its stage threads are free among the
+ * executor's core threads, as stages block on each other and a partly started run would never finish; otherwise it
+ * is refused with a TaskRejectedException, so concurrent runs cannot starve each other or other workloads.
+ */
+@Service
+@Slf4j
+public class SyncUploadPipeline {
+    public static final String PERSONS = "persons";
+    public static final String VISITS = "visits";
+    public static final String ENCOUNTERS = "encounters";
+    private static final long STAGE_EXIT_TIMEOUT_SECONDS = 30;
+
+    private final ChangeFeedService changeFeedService;
+    private final HttpConnectionManager httpConnectionManager;
+    private final SyncPayloadCodec syncPayloadCodec;
+    private final PlatformTransactionManager transactionManager;
+    private final AsyncTaskExecutor syncExecutor;
+    private final Semaphore stageThreads;
+
+    @Value("${patient.sync.pipeline.queue-capacity:4}")
+    private int queueCapacity;
+
+    @Value("${patient.sync.pipeline.serializers:1}")
+    private int serializers;
+
+    @Value("${patient.sync.pipeline.compressors:2}")
+    private int compressors;
+
+    @Value("${patient.sync.pipeline.uploaders:2}")
+    private int uploaders;
+
+    @Value("${patient.sync.pipeline.batch-size:500}")
+    private int batchSize;
+
+    public SyncUploadPipeline(ChangeFeedService changeFeedService, HttpConnectionManager httpConnectionManager,
+                              SyncPayloadCodec syncPayloadCodec, PlatformTransactionManager transactionManager,
+                              @Qualifier("syncExecutor") AsyncTaskExecutor syncExecutor,
+                              ExecutorProperties executorProperties) {
+        this.changeFeedService = changeFeedService;
+        this.httpConnectionManager = httpConnectionManager;
+        this.syncPayloadCodec = syncPayloadCodec;
+        this.transactionManager = transactionManager;
+        this.syncExecutor = syncExecutor;
+        this.stageThreads = new Semaphore(executorProperties.getPool(ExecutorProperties.SYNC).getCoreSize());
+    }
+
+    /**
+     * Uploads every change of the given entity type after the resume token.
+     *
+     * @param entity {@link #PERSONS}, {@link #VISITS} or {@link #ENCOUNTERS}
+     * @return the resume token to start the next run from
+     * @throws IOException when a batch fails; the message carries the token that is safe to resume from
+     * @throws TaskRejectedException when the sync executor has not enough free threads for another run
+     */
+    public String upload(Long facilityId, String entity, String resumeToken, String url) throws IOException {
+        Function<String, ChangeFeedBatch<?>> feed = getFeed(facilityId, entity);
+        SyncPayloadFormat format = syncPayloadCodec.getFormat(HttpUrl.get(url).host());
+        BlockingQueue<Item> serializeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> compressQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> uploadQueue = new ArrayBlockingQueue<>(queueCapacity);
+        int workers = 1 + serializers + compressors + uploaders;
+        Progress progress = new Progress(resumeToken, workers);
+
+        if (!stageThreads.tryAcquire(workers)) {
+            throw new TaskRejectedException("Sync pipeline needs " + workers + " threads, " +
+                    stageThreads.availablePermits() + " of the sync executor are free");
+        }
+        List<Future<?>> stages = new ArrayList<>();
+        try {
+            stages.add(syncExecutor.submit(progress.track(() -> read(feed, resumeToken, serializeQueue, progress))));
+            stages.addAll(startStage(progress, serializers, serializeQueue, compressQueue, compressors, item -> {
+                item.payload = syncPayloadCodec.encode(item.batch.getItems(), format);
+                item.sha256 = Hashing.sha256().hashBytes(item.payload).toString();
+                item.batch = null;
+            }));
+            stages.addAll(startStage(progress, compressors, compressQueue, uploadQueue, uploaders,
+                    item -> item.payload = gzip(item.payload)));
+            stages.addAll(startStage(progress, uploaders, uploadQueue, null, 0, item -> {
+                httpConnectionManager.postGzipped(item.payload, item.sha256, format, url);
+                progress.completed(item.sequence, item.resumeToken);
+            }));
+            awaitStages(stages, progress);
+        } finally {
+            // cancelled stages give their threads back once they notice the interrupt
+            if (!progress.awaitExited(STAGE_EXIT_TIMEOUT_SECONDS)) {
+                log.warn("sync {} stages still running {}s after the run ended", entity, STAGE_EXIT_TIMEOUT_SECONDS);
+            }
+            stageThreads.release(workers);
+        }
+        log.info("uploaded {} {} batches for facility {}", progress.uploaded.get(), entity, facilityId);
+        return progress.getResumeToken();
+    }
+
+    private Function<String, ChangeFeedBatch<?>> getFeed(Long facilityId, String entity) {
+        switch (entity) {
+            case PERSONS:
+                return token -> changeFeedService.getPersonChanges(facilityId, token, batchSize, null);
+            case VISITS:
+                return token -> changeFeedService.getVisitChanges(facilityId, token, batchSize, null);
+            case ENCOUNTERS:
+                return token -> changeFeedService.getEncounterChanges(facilityId, token, batchSize, null);
+            default:
+                throw new IllegalArgumentException("Unknown sync entity " + entity);
+        }
+    }
+
+    private void read(Function<String, ChangeFeedBatch<?>> feed, String resumeToken,
+                      BlockingQueue<Item> output, Progress progress) throws InterruptedException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        String token = resumeToken;
+        int sequence = 0;
+        try {
+            ChangeFeedBatch<?> batch;
+            do {
+                String current = token;
+                batch = transactionTemplate.execute(status -> feed.apply(current));
+                if (batch == null || batch.getItems().isEmpty()) {
+                    break;
+                }
+                token = batch.getResumeToken();
+                output.put(new Item(sequence++, batch, token));
+            } while (batch.isHasMore());
+        } finally {
+            log.debug("sync reader queued {} batches", sequence);
+            if (!progress.isFailed()) {
+                for (int i = 0; i < serializers; i++) {
+                    output.put(Item.END);
+                }
+            }
+        }
+    }
+
+    private List<Future<?>> startStage(Progress progress, int workers, BlockingQueue<Item> input,
+                                       BlockingQueue<Item> output, int downstreamWorkers, Stage stage) {
+        AtomicInteger running = new AtomicInteger(workers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(syncExecutor.submit(progress.track(() -> {
+                try {
+                    for (Item item = input.take(); item != Item.END; item = input.take()) {
+                        stage.process(item);
+                        if (output != null) {
+                            output.put(item);
+                        }
+                    }
+                } finally {
+                    if (running.decrementAndGet() == 0 && output != null && !progress.isFailed()) {
+                        for (int j = 0; j < downstreamWorkers; j++) {
+                            output.put(Item.END);
+                        }
+                    }
+                }
+            })));
+        }
+        return futures;
+    }
+
+    /**
+     * Waits until every stage has finished or one has failed; a failure cancels the remaining stages,
+     * which may be blocked on a queue that will never move again.
+     */
+    private void awaitStages(List<Future<?>> stages, Progress progress) throws IOException {
+        try {
+            progress.awaitFinished();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.fail(e);
+        } finally {
+            stages.forEach(stage -> stage.cancel(true));
+        }
+        if (progress.isFailed()) {
+            throw new IOException("Sync upload failed, resume from " + progress.getResumeToken(), progress.failure.get());
+        }
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(payload);
+        }
+        return compressed.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void process(Item item) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+        void run() throws Exception;
+    }
+
+    private static final class Item {
+        private static final Item END = new Item(-1, null, null);
+
+        private final int sequence;
+        private final String resumeToken;
+        private ChangeFeedBatch<?> batch;
+        private byte[] payload;
+        private String sha256;
+
+        private Item(int sequence, ChangeFeedBatch<?> batch, String resumeToken) {
+            this.sequence = sequence;
+            this.batch = batch;
+            this.resumeToken = resumeToken;
+        }
+    }
+
+    /**
+     * Advances the resume token only over an unbroken run of uploaded batches.
+     */
+    private static final class Progress {
+        private final TreeMap<Integer, String> pending = new TreeMap<>();
+        private final AtomicInteger uploaded = new AtomicInteger();
+        private final AtomicReference<String> resumeToken;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final CountDownLatch finished;
+        private final CountDownLatch exited;
+        private int nextSequence;
+
+        private Progress(String resumeToken, int workers) {
+            this.resumeToken = new AtomicReference<>(resumeToken);
+            this.finished = new CountDownLatch(workers);
+            this.exited = new CountDownLatch(workers);
+        }
+
+        private Runnable track(Worker worker) {
+            return () -> {
+                try {
+                    worker.run();
+                } catch (Throwable e) {
+                    if (!isFailed()) {
+                        fail(e);
+                    }
+                } finally {
+                    finished.countDown();
+                    exited.countDown();
+                }
+            };
+        }
+
+        private void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+            while (finished.getCount() > 0) {
+                finished.countDown();
+            }
+        }
+
+        private boolean isFailed() {
+            return failure.get() != null;
+        }
+
+        private void awaitFinished() throws InterruptedException {
+            finished.await();
+        }
+
+        /**
+         * Unlike {@link #awaitFinished()}, which a failure releases at once, waits for every worker to return.
+         */
+        private boolean awaitExited(long seconds) {
+            try {
+                return exited.await(seconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private synchronized void completed(int sequence, String token) {
+            uploaded.incrementAndGet();
+            pending.put(sequence, token);
+            while (!pending.isEmpty() && pending.firstKey() == nextSequence) {
+                resumeToken.set(pending.pollFirstEntry().getValue());
+                nextSequence++;
+            }
+        }
+
+        private String getResumeToken() {
+            return resumeToken.get();
+        }
+    }
+}
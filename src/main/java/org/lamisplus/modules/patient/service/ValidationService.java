@@ -3,9 +3,12 @@ package org.lamisplus.modules.patient.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.lamisplus.modules.base.domain.entities.User;
-import org.lamisplus.modules.base.service.UserService;
+import org.lamisplus.modules.patient.domain.dto.RegistrationConflictView;
+import org.lamisplus.modules.patient.domain.dto.RegistrationValidationRequest;
+import org.lamisplus.modules.patient.domain.dto.RegistrationValidationResponse;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.repository.PersonRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
@@ -19,9 +22,12 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 public class ValidationService {
     private final PersonRepository personRepository;
-    private final UserService userService;
+    private final FacilityContext facilityContext;
 
-    @Async("taskExecutor")
+    @Value("${patient.validation.max-duplicate-candidates:10}")
+    private int maxDuplicateCandidates;
+
+    @Async("validationExecutor")
     public CompletableFuture<Boolean> hospitalNumberExist(String hospitalNumber) throws InterruptedException {
 
             List<Person> person = personRepository.getPersonByHospitalNumber(hospitalNumber);
@@ -32,16 +38,15 @@ public class ValidationService {
         return CompletableFuture.completedFuture(true);
     }
 
-    @Async("taskExecutor")
+    @Async("validationExecutor")
     public CompletableFuture<Boolean> isRegistrationDateBeforeDateOfBirth(LocalDate registrationDate, LocalDate birthDate) {
-        if (registrationDate.isBefore(birthDate)) CompletableFuture.completedFuture(true);
+        if (registrationDate.isBefore(birthDate)) return CompletableFuture.completedFuture(true);
         return CompletableFuture.completedFuture(false);
     }
 
-    @Async("taskExecutor")
+    @Async("validationExecutor")
     public CompletableFuture<Boolean> ninNumberExist(String nin) throws InterruptedException {
-        Optional<User> currentUser = userService.getUserWithRoles();
-        Thread.sleep(2000L);
+        Optional<User> currentUser = facilityContext.getCurrentUser();
         if (currentUser.isPresent()) {
             Long currentOrganisationUnitId = currentUser.get().getCurrentOrganisationUnitId();
             Optional<Person> person = personRepository.getPersonByNinNumberAndFacilityIdAndArchived(nin, currentOrganisationUnitId, 0);
@@ -52,4 +57,73 @@ public class ValidationService {
         return CompletableFuture.completedFuture(false);
     }
 
+    /**
+     * Runs every registration check against the current user's facility in one query and reports all
+     * violations together, along with persons of the same name as possible duplicates.
+     */
+    public RegistrationValidationResponse validateRegistration(RegistrationValidationRequest request) {
+        RegistrationValidationResponse response = new RegistrationValidationResponse();
+        if (request.getDateOfRegistration() != null && request.getDateOfBirth() != null
+                && request.getDateOfRegistration().isBefore(request.getDateOfBirth())) {
+            response.addViolation("dateOfRegistration", RegistrationValidationResponse.REGISTRATION_BEFORE_BIRTH,
+                    "Date of registration is before date of birth");
+        }
+
+        String hospitalNumber = trim(request.getHospitalNumber());
+        String ninNumber = trim(request.getNinNumber());
+        String firstName = trim(request.getFirstName());
+        String surname = trim(request.getSurname());
+        boolean checkName = !firstName.isEmpty() && !surname.isEmpty();
+        if (hospitalNumber.isEmpty() && ninNumber.isEmpty() && !checkName) {
+            return response;
+        }
+        Long facilityId = facilityContext.getFacilityId();
+        Long personId = request.getPersonId() != null ? request.getPersonId() : 0L;
+
+        List<RegistrationConflictView> conflicts = personRepository.findRegistrationConflicts(
+                facilityId, personId, nullIfEmpty(hospitalNumber), nullIfEmpty(ninNumber),
+                checkName ? firstName : null, checkName ? surname : null, maxDuplicateCandidates + 2);
+        boolean hospitalNumberExists = false;
+        boolean ninExists = false;
+        for (RegistrationConflictView conflict : conflicts) {
+            hospitalNumberExists |= !hospitalNumber.isEmpty() && hospitalNumber.equals(conflict.getHospitalNumber());
+            ninExists |= !ninNumber.isEmpty() && ninNumber.equals(conflict.getNinNumber());
+            if (checkName && firstName.equalsIgnoreCase(trim(conflict.getFirstName()))
+                    && surname.equalsIgnoreCase(trim(conflict.getSurname()))
+                    && response.getDuplicateCandidates().size() < maxDuplicateCandidates) {
+                response.getDuplicateCandidates().add(toDuplicateCandidate(conflict, request.getDateOfBirth()));
+            }
+        }
+        if (hospitalNumberExists) {
+            response.addViolation("hospitalNumber", RegistrationValidationResponse.HOSPITAL_NUMBER_EXISTS,
+                    "Hospital number " + hospitalNumber + " already exists");
+        }
+        if (ninExists) {
+            response.addViolation("ninNumber", RegistrationValidationResponse.NIN_EXISTS,
+                    "NIN " + ninNumber + " already exists");
+        }
+        return response;
+    }
+
+    private static RegistrationValidationResponse.DuplicateCandidate toDuplicateCandidate(
+            RegistrationConflictView conflict, LocalDate dateOfBirth) {
+        RegistrationValidationResponse.DuplicateCandidate candidate = new RegistrationValidationResponse.DuplicateCandidate();
+        candidate.setId(conflict.getId());
+        candidate.setUuid(conflict.getUuid());
+        candidate.setHospitalNumber(conflict.getHospitalNumber());
+        candidate.setFirstName(conflict.getFirstName());
+        candidate.setSurname(conflict.getSurname());
+        candidate.setSex(conflict.getSex());
+        candidate.setDateOfBirth(conflict.getDateOfBirth());
+        candidate.setSameDateOfBirth(dateOfBirth != null && dateOfBirth.equals(conflict.getDateOfBirth()));
+        return candidate;
+    }
+
+    private static String trim(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
 }
@@ -6,10 +6,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.joda.time.DateTime;
 import org.lamisplus.modules.base.controller.apierror.EntityNotFoundException;
 import org.lamisplus.modules.base.controller.apierror.RecordExistException;
-import org.lamisplus.modules.base.domain.entities.User;
-import org.lamisplus.modules.base.service.UserService;
 import org.lamisplus.modules.patient.domain.dto.*;
 import org.lamisplus.modules.patient.domain.entity.Encounter;
+import org.lamisplus.modules.patient.domain.entity.PatientChangeOutbox;
 import org.lamisplus.modules.patient.domain.entity.PatientCheckPostService;
 import org.lamisplus.modules.patient.domain.entity.Person;
 import org.lamisplus.modules.patient.domain.entity.Visit;
@@ -18,8 +17,11 @@ import org.lamisplus.modules.patient.repository.PatientCheckPostServiceRepositor
 import org.lamisplus.modules.patient.repository.PersonRepository;
 import org.lamisplus.modules.patient.repository.VisitRepository;
 import org.lamisplus.modules.patient.utility.LocalDateConverter;
+import org.lamisplus.modules.patient.utility.HttpCaching;
+import org.lamisplus.modules.patient.utility.PatientUuid;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.Convert;
 //import javax.validation.constraints.PastOrPresent;
@@ -27,9 +29,10 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
@@ -43,9 +46,12 @@ public class VisitService {
 
     private final PatientCheckPostServiceRepository patientCheckPostServiceRepository;
 
-    private final UserService userService;
+    private final FacilityContext facilityContext;
 
+    private final PatientChangeOutboxService changeOutboxService;
 
+
+    @Transactional
     public Visit createVisit(VisitRequest visitDto) {
         String checkInDate = visitDto.getCheckInDate();
         Person person = personRepository
@@ -56,7 +62,7 @@ public class VisitService {
         if (currentVisit.isPresent())
             throw new RecordExistException(VisitService.class, "errorMessage", "Visit Already exist for this patient " + person.getId());
         Visit visit = convertDtoToEntityVisit(visitDto);
-        visit.setUuid(UUID.randomUUID().toString());
+        visit.setUuid(PatientUuid.next());
         visit.setArchived(0);
         if (checkInDate != null) {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
@@ -69,24 +75,31 @@ public class VisitService {
             LocalDateTime visitStartDateTime = LocalDateTime.parse(formatDateTime, formatter);
             visit.setVisitStartDate(visitStartDateTime);
         }
-        return visitRepository.save(visit);
+        Visit savedVisit = visitRepository.save(visit);
+        changeOutboxService.record(savedVisit, PatientChangeOutbox.INSERT);
+        return savedVisit;
     }
 
+    @Transactional
     public VisitDto updateVisit(Long id, VisitDto visitDto) {
         Visit existVisit = getExistVisit(id);
         Visit visit = convertDtoToEntity(visitDto);
         visit.setId(existVisit.getId());
         visit.setArchived(0);
-        return convertEntityToDto(visitRepository.save(visit));
+        Visit savedVisit = visitRepository.save(visit);
+        changeOutboxService.record(savedVisit, PatientChangeOutbox.UPDATE);
+        return convertEntityToDto(savedVisit);
 
     }
 
+    @Transactional
     public void checkOutVisitById(Long visitId) {
         Visit visit = getExistVisit(visitId);
         List<Encounter> encounters = encounterRepository.getEncounterByVisit(visit);
         encounters.forEach(this::checkoutFromAllService);
         visit.setVisitEndDate(LocalDateTime.now());
         visitRepository.save(visit);
+        changeOutboxService.record(visit, PatientChangeOutbox.UPDATE);
     }
 
     private void checkoutFromAllService(Encounter encounter) {
@@ -94,20 +107,20 @@ public class VisitService {
             encounter.setStatus("COMPLETED");
         }
         encounterRepository.save(encounter);
+        changeOutboxService.record(encounter, PatientChangeOutbox.UPDATE);
     }
 
     public VisitDto getVisitById(Long id) {
         return convertEntityToDto(getExistVisit(id));
     }
 
-    public List<VisitDto> getAllVisit() {
-        Optional<User> currentUser = this.userService.getUserWithRoles();
-        Long currentOrganisationUnitId = 0L;
-        if (currentUser.isPresent()) {
-            User user = (User) currentUser.get();
-            currentOrganisationUnitId = user.getCurrentOrganisationUnitId();
+    public Optional<ResourceVersion> getVisitVersion(Long id) {
+        return visitRepository.findVisitVersion(id)
+                .map(view -> new ResourceVersion(HttpCaching.eTag(view.getDetail()), view.getLastModifiedDate()));
+    }
 
-        }
+    public List<VisitDto> getAllVisit() {
+        Long currentOrganisationUnitId = facilityContext.getFacilityId();
         return visitRepository
                 .findAllByArchivedAndFacilityId(0, currentOrganisationUnitId)
                 .stream()
@@ -115,12 +128,15 @@ public class VisitService {
                 .collect(Collectors.toList());
     }
 
+    @Transactional
     public void archivedVisit(Long id) {
         Visit existVisit = getExistVisit(id);
         existVisit.setArchived(1);
         visitRepository.save(existVisit);
+        changeOutboxService.record(existVisit, PatientChangeOutbox.UPDATE);
     }
 
+    @Transactional
     public VisitDto checkInPerson(CheckInDto checkInDto) {
         Long personId = checkInDto.getVisitDto().getPersonId();
         Person person = personRepository
@@ -148,11 +164,12 @@ public class VisitService {
         encounter.setArchived(0);
         encounter.setVisit(visit);
         encounter.setEncounterDate(visit.getVisitStartDate());
-        encounter.setUuid(UUID.randomUUID().toString());
+        encounter.setUuid(PatientUuid.next());
         encounter.setStatus("PENDING");
         encounter.setServiceCode(serviceCode);
         encounter.setFacilityId(visit.getFacilityId());
-        encounterRepository.save(encounter);
+        encounterRepository.insertIfNoOpenEncounter(encounter)
+                .ifPresent(saved -> changeOutboxService.record(saved, PatientChangeOutbox.INSERT));
     }
 
     private Encounter getEncounter(Person person, Visit visit) {
@@ -161,17 +178,44 @@ public class VisitService {
                 .archived(0)
                 .visit(visit)
                 .encounterDate(visit.getVisitStartDate())
-                .uuid(UUID.randomUUID().toString())
+                .uuid(PatientUuid.next())
                 .status("PENDING")
                 .build();
     }
 
     public List<VisitDetailDto> getVisitWithEncounterDetails(Long personId) {
+        return getVisitWithEncounterDetails(personId, false);
+    }
+
+    public List<VisitDetailDto> getVisitWithEncounterDetails(Long personId, boolean fullHistory) {
         Optional<Person> person = personRepository.findById(personId);
-        return person.map(value -> encounterRepository.getEncounterByPersonAndArchived(value, 0)
+        List<VisitDetailDto> visitDetails = person.map(value -> encounterRepository.getEncounterByPersonAndArchived(value, 0)
                 .stream()
                 .map(encounter -> getVisitDetailDto(personId, encounter)).collect(Collectors.toList())).orElseGet(ArrayList::new);
+        if (fullHistory && person.isPresent()) {
+            visitDetails.addAll(getArchivedVisitDetails(personId));
+        }
+        return visitDetails;
+    }
 
+    private List<VisitDetailDto> getArchivedVisitDetails(Long personId) {
+        List<ArchivedEncounterView> archivedEncounters = encounterRepository.findArchivedEncountersByPersonId(personId);
+        Map<Long, List<EncounterResponseDto>> encountersByVisit = archivedEncounters.stream()
+                .collect(Collectors.groupingBy(ArchivedEncounterView::getVisitId, LinkedHashMap::new,
+                        Collectors.mapping(archived -> EncounterService.convertArchivedToResponseDto(personId, archived), Collectors.toList())));
+        return archivedEncounters.stream()
+                .map(archived -> VisitDetailDto.builder()
+                        .status(archived.getStatus())
+                        .id(archived.getVisitId())
+                        .facilityId(archived.getFacilityId())
+                        .personId(personId)
+                        .checkInDate(archived.getCheckInDate())
+                        .checkOutDate(archived.getCheckOutDate())
+                        .encounterId(archived.getId())
+                        .service(archived.getServiceCode())
+                        .encounters(encountersByVisit.get(archived.getVisitId()))
+                        .build())
+                .collect(Collectors.toList());
     }
 
     private VisitDetailDto getVisitDetailDto(Long personId, Encounter encounter) {
@@ -270,8 +314,12 @@ public class VisitService {
         return visitRepository.findByVisitStartDateAndPerson(visitStartDate, person);
     }
 
+    @Transactional
     public Visit saveVisit(Visit visit){
-        return visitRepository.save(visit);
+        String operation = visit.isNew() ? PatientChangeOutbox.INSERT : PatientChangeOutbox.UPDATE;
+        Visit savedVisit = visitRepository.save(visit);
+        changeOutboxService.record(savedVisit, operation);
+        return savedVisit;
     }
 
     public Optional<Visit> findByUuid(String uuid){
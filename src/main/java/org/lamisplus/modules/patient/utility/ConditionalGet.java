@@ -0,0 +1,18 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a GET that answers If-None-Match from a version query through {@link HttpCaching}, without loading the
+ * response. Conditional requests to such a method skip the rate limiter of its {@link EndpointLoad} class; on any
+ * other method the conditional headers change nothing.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConditionalGet {
+}
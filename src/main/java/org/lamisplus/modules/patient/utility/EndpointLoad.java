@@ -0,0 +1,77 @@
+package org.lamisplus.modules.patient.utility;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+
+import java.time.Duration;
+
+/**
+ * Classes of patient API endpoints that are limited separately, so that reports and searches cannot take the
+ * database connections that check-in and registration writes need. Each class has a resilience4j bulkhead of its
+ * own and, where it has a rate limit, one rate limiter per user, both tunable under
+ * resilience4j.bulkhead/ratelimiter.instances.
+ */
+public enum EndpointLoad {
+    /**
+     * Full-facility lists, duplicate checks, statistics, exports and bulk imports.
+     */
+    REPORT("patientReports"),
+    /**
+     * Paged patient searches and the checked-in lists.
+     */
+    SEARCH("patientSearch"),
+    /**
+     * Every other GET. Bounded but not rate limited.
+     */
+    READ("patientReads"),
+    /**
+     * Every other POST, PUT and DELETE. Not rate limited unless an instance is configured, and waits for a
+     * permit rather than being shed at once.
+     */
+    WRITE("patientWrites");
+
+    private final String instance;
+
+    EndpointLoad(String instance) {
+        this.instance = instance;
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    public BulkheadConfig defaultBulkheadConfig() {
+        switch (this) {
+            case REPORT:
+                return BulkheadConfig.custom().maxConcurrentCalls(2).maxWaitDuration(Duration.ZERO).build();
+            case SEARCH:
+                return BulkheadConfig.custom().maxConcurrentCalls(6).maxWaitDuration(Duration.ofMillis(500)).build();
+            case READ:
+                return BulkheadConfig.custom().maxConcurrentCalls(10).maxWaitDuration(Duration.ofMillis(500)).build();
+            default:
+                return BulkheadConfig.custom().maxConcurrentCalls(20).maxWaitDuration(Duration.ofSeconds(5)).build();
+        }
+    }
+
+    /**
+     * The module's rate limit for this class per user, or null when it is not rate limited by default.
+     */
+    public RateLimiterConfig defaultRateLimiterConfig() {
+        switch (this) {
+            case REPORT:
+                return RateLimiterConfig.custom()
+                        .limitForPeriod(30)
+                        .limitRefreshPeriod(Duration.ofMinutes(1))
+                        .timeoutDuration(Duration.ZERO)
+                        .build();
+            case SEARCH:
+                return RateLimiterConfig.custom()
+                        .limitForPeriod(10)
+                        .limitRefreshPeriod(Duration.ofSeconds(1))
+                        .timeoutDuration(Duration.ZERO)
+                        .build();
+            default:
+                return null;
+        }
+    }
+}
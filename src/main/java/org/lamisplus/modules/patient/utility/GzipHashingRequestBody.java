@@ -0,0 +1,103 @@
+package org.lamisplus.modules.patient.utility;
+
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingOutputStream;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request body that is produced while it is sent: the writer's output is hashed with SHA-256,
+ * gzip-compressed and streamed as a chunked body, so no copy of the payload is held in memory.
+ * The hash and byte counts are available once the body has been written.
+ */
+public class GzipHashingRequestBody extends RequestBody {
+    private static final int GZIP_BUFFER_SIZE = 16 * 1024;
+
+    private final MediaType mediaType;
+    private final BodyWriter writer;
+    private volatile String sha256;
+    private volatile long uncompressedBytes;
+    private volatile long compressedBytes;
+
+    public GzipHashingRequestBody(MediaType mediaType, BodyWriter writer) {
+        this.mediaType = mediaType;
+        this.writer = writer;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mediaType;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingOutputStream compressed = new CountingOutputStream(new NonClosingOutputStream(sink.outputStream()));
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed, GZIP_BUFFER_SIZE);
+        CountingOutputStream uncompressed = new CountingOutputStream(gzip);
+        HashingOutputStream hashing = new HashingOutputStream(Hashing.sha256(), uncompressed);
+        writer.writeTo(new NonClosingOutputStream(hashing));
+        hashing.flush();
+        gzip.finish();
+        gzip.flush();
+        sha256 = hashing.hash().toString();
+        uncompressedBytes = uncompressed.getCount();
+        compressedBytes = compressed.getCount();
+    }
+
+    /**
+     * SHA-256 of the uncompressed payload, or null when the body has not been written completely.
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Keeps writers that close their stream (Jackson does by default) from closing the gzip stream
+     * before it is finished, or the connection's sink.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
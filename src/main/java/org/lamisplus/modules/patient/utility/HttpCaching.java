@@ -0,0 +1,68 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.lamisplus.modules.patient.domain.dto.ResourceVersion;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+
+/**
+ * ETag and Last-Modified handling for GETs whose version can be read without loading the response.
+ */
+public final class HttpCaching {
+    /**
+     * Patient data may be stored by the browser only, and must be revalidated on every use.
+     */
+    public static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    private HttpCaching() {
+    }
+
+    public static String eTag(Object... parts) {
+        StringBuilder builder = new StringBuilder();
+        for (Object part : parts) {
+            builder.append(part).append('|');
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    public static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime == null ? -1 : dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * A 304 response when the request's If-None-Match or If-Modified-Since still matches {@code version}.
+     * Without a last modification date in {@code version} only If-None-Match is checked.
+     */
+    public static <T> Optional<ResponseEntity<T>> notModified(WebRequest request, Optional<ResourceVersion> version,
+                                                              CacheControl cacheControl) {
+        if (!version.isPresent()) {
+            return Optional.empty();
+        }
+        ResourceVersion current = version.get();
+        if (!request.checkNotModified(current.getETag(), toEpochMilli(current.getLastModified()))) {
+            return Optional.empty();
+        }
+        return Optional.of(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(cacheControl)
+                .eTag(current.getETag())
+                .build());
+    }
+
+    public static ResponseEntity.BodyBuilder ok(Optional<ResourceVersion> version, CacheControl cacheControl) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().cacheControl(cacheControl);
+        version.ifPresent(current -> {
+            builder.eTag(current.getETag());
+            if (current.getLastModified() != null) {
+                builder.lastModified(toEpochMilli(current.getLastModified()));
+            }
+        });
+        return builder;
+    }
+}
@@ -1,32 +1,138 @@
 package org.lamisplus.modules.patient.utility;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import org.lamisplus.modules.patient.config.HttpClientProperties;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * HTTP client for sync calls. All timeout profiles are views of one OkHttpClient, so they share a
+ * single connection pool, dispatcher and TLS session cache and repeated uploads reuse warm connections.
+ * Every call goes through the {@link SyncResilience} policies, so an unreachable server fails calls fast
+ * instead of holding a thread per call for the length of the timeouts.
+ * Use the Spring bean; the no-argument constructor only exists for callers that still create their own
+ * instance and falls back to a process-wide client with the default settings.
+ */
+@Slf4j
 public class HttpConnectionManager {
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static volatile HttpConnectionManager fallback;
+
+    private final OkHttpClient httpClient;
+    private final Map<String, OkHttpClient> profileClients;
+    private final SyncResilience resilience;
+
+    @Deprecated
+    public HttpConnectionManager() {
+        HttpConnectionManager shared = getFallback();
+        this.httpClient = shared.httpClient;
+        this.profileClients = shared.profileClients;
+        this.resilience = shared.resilience;
+    }
+
+    public HttpConnectionManager(HttpClientProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, SyncResilience.none());
+    }
+
+    public HttpConnectionManager(HttpClientProperties properties, MeterRegistry meterRegistry, SyncResilience resilience) {
+        ConnectionPool connectionPool = new ConnectionPool(
+                properties.getMaxIdleConnections(), properties.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .protocols(properties.isHttp2Enabled()
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1));
+        if (meterRegistry != null) {
+            builder.eventListenerFactory(HttpConnectionMetrics.factory(meterRegistry, connectionPool));
+        }
+        OkHttpClient client = builder.build();
+        client.dispatcher().setMaxRequestsPerHost(properties.getMaxRequestsPerHost());
+
+        Map<String, OkHttpClient> clients = new HashMap<>();
+        properties.getTimeouts().forEach((name, timeout) -> clients.put(name, withTimeouts(client, timeout)));
+        this.httpClient = clients.getOrDefault(HttpClientProperties.DEFAULT_PROFILE, client);
+        this.profileClients = Collections.unmodifiableMap(clients);
+        this.resilience = resilience;
+    }
+
+    private static OkHttpClient withTimeouts(OkHttpClient client, HttpClientProperties.TimeoutProfile timeout) {
+        OkHttpClient.Builder builder = client.newBuilder();
+        if (timeout.getConnect() != null) {
+            builder.connectTimeout(timeout.getConnect().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (timeout.getRead() != null) {
+            builder.readTimeout(timeout.getRead().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (timeout.getWrite() != null) {
+            builder.writeTimeout(timeout.getWrite().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (timeout.getCall() != null) {
+            builder.callTimeout(timeout.getCall().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+
+    private static HttpConnectionManager getFallback() {
+        if (fallback == null) {
+            synchronized (HttpConnectionManager.class) {
+                if (fallback == null) {
+                    fallback = new HttpConnectionManager(new HttpClientProperties(), null);
+                }
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Returns the client configured with the named timeout profile, or the default one when the profile is unknown.
+     */
+    public OkHttpClient getClient(String profile) {
+        return profileClients.getOrDefault(profile, httpClient);
+    }
+
+    public SyncResilience getResilience() {
+        return resilience;
+    }
 
     public String get(String url) throws Exception {
+        return get(url, HttpClientProperties.DEFAULT_PROFILE);
+    }
+
+    public String get(String url, String profile) throws IOException {
         Request request = new Request.Builder()
                 .url(url)
                 .addHeader("custom-key", "lamisplus")  // add request headers
                 .addHeader("User-Agent", "OkHttp Bot")
                 .build();
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+        return resilience.call(() -> {
+            try (Response response = getClient(profile).newCall(request).execute()) {
+                if (!response.isSuccessful()) throw new SyncHttpException(response);
 
-            // Get response body
-            return Objects.requireNonNull(response.body()).string();
-        }
+                // Get response body
+                return Objects.requireNonNull(response.body()).string();
+            }
+        });
     }
 
     public String post(byte[] bytes, String url) throws IOException {
-        RequestBody body = RequestBody.create(bytes, MediaType.parse("application/json; charset=utf-8"));
+        return post(bytes, url, HttpClientProperties.UPLOAD_PROFILE);
+    }
+
+    public String post(byte[] bytes, String url, String profile) throws IOException {
+        RequestBody body = RequestBody.create(bytes, JSON);
         String hash = Hashing.sha256().hashBytes(bytes).toString();
 
         Request request = new Request.Builder()
@@ -37,16 +143,133 @@ public class HttpConnectionManager {
                 .post(body)
                 .build();
 
-        try (Response response = httpClient
-                .newBuilder()
-                .connectTimeout(30, TimeUnit.MINUTES)
-                .readTimeout(30, TimeUnit.MINUTES)
-                .writeTimeout(30, TimeUnit.MINUTES)
-                .build()
-                .newCall(request).execute()
-        ) {
-            if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-           return Objects.requireNonNull(response.body()).string();
+        return execute(request, profile);
+    }
+
+    /**
+     * Posts the payload in the codec's format for the target host, announcing the same format in Accept.
+     * A 415 answer to a binary format makes the codec fall back to JSON for that host and the payload is resent.
+     */
+    public String post(Object payload, String url, SyncPayloadCodec codec) throws IOException {
+        return resilience.call(() -> postEncoded(payload, url, codec));
+    }
+
+    private String postEncoded(Object payload, String url, SyncPayloadCodec codec) throws IOException {
+        String host = HttpUrl.get(url).host();
+        SyncPayloadFormat format = codec.getFormat(host);
+        byte[] bytes = codec.encode(payload, format);
+        Request request = new Request.Builder()
+                .url(url)
+                .addHeader("User-Agent", "OkHttp Bot")
+                .addHeader("Accept", format.getContentType())
+                .addHeader("Hash-Value", Hashing.sha256().hashBytes(bytes).toString())
+                .addHeader("token", "lamisplus")
+                .post(RequestBody.create(bytes, format.getMediaType()))
+                .build();
+
+        try (Response response = getClient(HttpClientProperties.UPLOAD_PROFILE).newCall(request).execute()) {
+            if (response.code() == 415 && format != SyncPayloadFormat.JSON) {
+                codec.markUnsupported(host, format);
+                return postEncoded(payload, url, codec);
+            }
+            if (!response.isSuccessful()) throw new SyncHttpException(response);
+            return Objects.requireNonNull(response.body()).string();
+        }
+    }
+
+    /**
+     * Posts a payload that is already gzip-compressed; the hash is that of the uncompressed payload.
+     */
+    public String postGzipped(byte[] gzipped, String sha256, SyncPayloadFormat format, String url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .addHeader("User-Agent", "OkHttp Bot")
+                .addHeader("Content-Encoding", "gzip")
+                .addHeader("Hash-Value", sha256)
+                .addHeader("token", "lamisplus")
+                .post(RequestBody.create(gzipped, format.getMediaType()))
+                .build();
+
+        return execute(request, HttpClientProperties.UPLOAD_PROFILE);
+    }
+
+    private String execute(Request request, String profile) throws IOException {
+        return resilience.call(() -> {
+            try (Response response = getClient(profile).newCall(request).execute()) {
+                if (!response.isSuccessful()) throw new SyncHttpException(response);
+                return Objects.requireNonNull(response.body()).string();
+            }
+        });
+    }
+
+    /**
+     * Streams a gzip-compressed body produced by the writer, computing its SHA-256 while it is sent.
+     * The request carries an Upload-Id header; when a hash confirmation url is given, the hash is sent there
+     * afterwards as a Hash-Value header with the same Upload-Id, since request trailers are not supported.
+     * The body is produced while it is sent, so a failed upload is not retried here.
+     */
+    public StreamingUploadResult postStreaming(String url, GzipHashingRequestBody.BodyWriter writer,
+                                               String hashConfirmationUrl) throws IOException {
+        String uploadId = PatientUuid.next();
+        GzipHashingRequestBody body = new GzipHashingRequestBody(JSON, writer);
+        Request request = new Request.Builder()
+                .url(url)
+                .addHeader("User-Agent", "OkHttp Bot")
+                .addHeader("Content-Encoding", "gzip")
+                .addHeader("Upload-Id", uploadId)
+                .addHeader("token", "lamisplus")
+                .post(body)
+                .build();
+
+        String responseBody = resilience.callOnce(() -> {
+            try (Response response = getClient(HttpClientProperties.UPLOAD_PROFILE).newCall(request).execute()) {
+                if (!response.isSuccessful()) throw new SyncHttpException(response);
+                return Objects.requireNonNull(response.body()).string();
+            }
+        });
+        log.debug("streamed upload {}: {} bytes sent as {} gzip bytes",
+                uploadId, body.getUncompressedBytes(), body.getCompressedBytes());
+
+        if (hashConfirmationUrl != null) {
+            Request confirmation = new Request.Builder()
+                    .url(hashConfirmationUrl)
+                    .addHeader("User-Agent", "OkHttp Bot")
+                    .addHeader("Upload-Id", uploadId)
+                    .addHeader("Hash-Value", body.getSha256())
+                    .addHeader("token", "lamisplus")
+                    .post(RequestBody.create(new byte[0], null))
+                    .build();
+            execute(confirmation, HttpClientProperties.DEFAULT_PROFILE);
+        }
+        return new StreamingUploadResult(uploadId, responseBody, body.getSha256(),
+                body.getUncompressedBytes(), body.getCompressedBytes());
+    }
+
+    /**
+     * Serializes the items one at a time into a streamed JSON array, so the payload never exists as a whole.
+     */
+    public StreamingUploadResult postJsonStreaming(String url, ObjectMapper mapper, Iterator<?> items,
+                                                   String hashConfirmationUrl) throws IOException {
+        return postStreaming(url, outputStream -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                while (items.hasNext()) {
+                    generator.writeObject(items.next());
+                }
+                generator.writeEndArray();
+            }
+        }, hashConfirmationUrl);
+    }
+
+    /**
+     * Closes pooled connections and stops the dispatcher threads when the application context shuts down.
+     */
+    public void shutdown() {
+        if (this == fallback) {
+            return;
         }
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        log.debug("sync http client shut down");
     }
 }
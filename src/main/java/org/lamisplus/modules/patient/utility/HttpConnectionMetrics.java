@@ -0,0 +1,71 @@
+package org.lamisplus.modules.patient.utility;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts new versus reused connections and times calls of the shared sync HTTP client.
+ * A call that acquires a connection without a preceding connectStart reused a pooled one.
+ */
+public class HttpConnectionMetrics extends EventListener {
+    private final Counter connectionsOpened;
+    private final Counter connectionsAcquired;
+    private final Counter connectFailures;
+    private final Timer callSuccess;
+    private final Timer callFailure;
+    private long callStart;
+
+    private HttpConnectionMetrics(MeterRegistry registry) {
+        connectionsOpened = registry.counter("patient.http.connections.opened");
+        connectionsAcquired = registry.counter("patient.http.connections.acquired");
+        connectFailures = registry.counter("patient.http.connections.failed");
+        callSuccess = registry.timer("patient.http.calls", "outcome", "success");
+        callFailure = registry.timer("patient.http.calls", "outcome", "failure");
+    }
+
+    public static EventListener.Factory factory(MeterRegistry registry, ConnectionPool connectionPool) {
+        Gauge.builder("patient.http.pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .register(registry);
+        Gauge.builder("patient.http.pool.idle", connectionPool, ConnectionPool::idleConnectionCount)
+                .register(registry);
+        return call -> new HttpConnectionMetrics(registry);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectionsOpened.increment();
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+        connectFailures.increment();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionsAcquired.increment();
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        callSuccess.record(System.nanoTime() - callStart, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        callFailure.record(System.nanoTime() - callStart, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,27 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.util.Objects;
+
+/**
+ * Single entry point for new person, visit and encounter uuids.
+ * Entities are not Spring beans, so the active generator is held statically;
+ * it defaults to {@link TimeOrderedUuidGenerator} and can be replaced through configuration.
+ */
+public final class PatientUuid {
+    private static volatile UuidGenerator generator = new TimeOrderedUuidGenerator();
+
+    private PatientUuid() {
+    }
+
+    public static String next() {
+        return generator.generate().toString();
+    }
+
+    public static UuidGenerator getGenerator() {
+        return generator;
+    }
+
+    public static void setGenerator(UuidGenerator uuidGenerator) {
+        generator = Objects.requireNonNull(uuidGenerator, "uuidGenerator");
+    }
+}
@@ -0,0 +1,86 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.java.StringTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BasicBinder;
+import org.hibernate.type.descriptor.sql.BasicExtractor;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Maps a String attribute onto a Postgres uuid column.
+ * The value is bound as {@link Types#OTHER}, so Postgres converts it to the column type,
+ * while the attribute (and the API) keeps the canonical string form.
+ */
+public class PostgresUuidStringType extends AbstractSingleColumnStandardBasicType<String> {
+    public static final String NAME = "pg-uuid-string";
+
+    public static final PostgresUuidStringType INSTANCE = new PostgresUuidStringType();
+
+    public PostgresUuidStringType() {
+        super(UuidStringSqlTypeDescriptor.INSTANCE, StringTypeDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    static class UuidStringSqlTypeDescriptor implements SqlTypeDescriptor {
+        static final UuidStringSqlTypeDescriptor INSTANCE = new UuidStringSqlTypeDescriptor();
+
+        @Override
+        public int getSqlType() {
+            return Types.OTHER;
+        }
+
+        @Override
+        public boolean canBeRemapped() {
+            return true;
+        }
+
+        @Override
+        public <X> ValueBinder<X> getBinder(JavaTypeDescriptor<X> javaTypeDescriptor) {
+            return new BasicBinder<X>(javaTypeDescriptor, this) {
+                @Override
+                protected void doBind(PreparedStatement st, X value, int index, WrapperOptions options) throws SQLException {
+                    st.setObject(index, javaTypeDescriptor.unwrap(value, String.class, options), Types.OTHER);
+                }
+
+                @Override
+                protected void doBind(CallableStatement st, X value, String name, WrapperOptions options) throws SQLException {
+                    st.setObject(name, javaTypeDescriptor.unwrap(value, String.class, options), Types.OTHER);
+                }
+            };
+        }
+
+        @Override
+        public <X> ValueExtractor<X> getExtractor(JavaTypeDescriptor<X> javaTypeDescriptor) {
+            return new BasicExtractor<X>(javaTypeDescriptor, this) {
+                @Override
+                protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
+                    return javaTypeDescriptor.wrap(rs.getString(name), options);
+                }
+
+                @Override
+                protected X doExtract(CallableStatement statement, int index, WrapperOptions options) throws SQLException {
+                    return javaTypeDescriptor.wrap(statement.getString(index), options);
+                }
+
+                @Override
+                protected X doExtract(CallableStatement statement, String name, WrapperOptions options) throws SQLException {
+                    return javaTypeDescriptor.wrap(statement.getString(name), options);
+                }
+            };
+        }
+    }
+}
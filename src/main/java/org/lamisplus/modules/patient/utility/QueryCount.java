@@ -0,0 +1,76 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * SQL statements prepared and executed on one thread between {@link QueryCounter#start()} and
+ * {@link QueryCounter#stop()}, with the number of times each normalized statement was prepared.
+ */
+public class QueryCount {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+
+    private final Map<String, Integer> statements = new LinkedHashMap<>();
+    private int statementCount;
+    private int executionCount;
+    private long executionNanos;
+
+    /**
+     * Reduces a statement to its shape, so that the same query with other parameters or literals counts as one.
+     */
+    public static String normalize(String sql) {
+        String normalized = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        normalized = STRING_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        return PARAMETER_LIST.matcher(normalized).replaceAll("(?)");
+    }
+
+    void statementPrepared(String sql) {
+        statementCount++;
+        statements.merge(normalize(sql), 1, Integer::sum);
+    }
+
+    void statementExecuted(long nanos) {
+        executionCount++;
+        executionNanos += nanos;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public int getExecutionCount() {
+        return executionCount;
+    }
+
+    public long getExecutionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(executionNanos);
+    }
+
+    public Map<String, Integer> getStatements() {
+        return Collections.unmodifiableMap(statements);
+    }
+
+    /**
+     * Statements prepared at least the given number of times, most repeated first: the usual sign of a query
+     * issued once per row of an earlier result (N+1).
+     */
+    public Map<String, Integer> getRepeatedStatements(int minimumRepeats) {
+        return statements.entrySet().stream()
+                .filter(entry -> entry.getValue() >= minimumRepeats)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    @Override
+    public String toString() {
+        return statementCount + " statements, " + executionCount + " executions in " + getExecutionMillis() + " ms";
+    }
+}
@@ -0,0 +1,88 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Counts the SQL statements Hibernate issues on the current thread, e.g. during one HTTP request or one test.
+ * <p>
+ * Statements are reported by {@link QueryCountingStatementInspector} and timed by
+ * {@link QueryCountingSessionListener}; both must be registered in the Hibernate properties
+ * (see application.yml). Work done through plain JDBC, e.g. Session.doWork, is not seen.
+ * <pre>
+ * QueryCounter.start();
+ * personService.getPerson(id);
+ * QueryCounter.assertMaxQueries(3);
+ * </pre>
+ */
+public final class QueryCounter {
+    private static final ThreadLocal<QueryCount> CURRENT = new ThreadLocal<>();
+    private static volatile boolean installed;
+
+    private QueryCounter() {
+    }
+
+    /**
+     * Starts a new count on this thread, replacing any count in progress.
+     */
+    public static QueryCount start() {
+        QueryCount count = new QueryCount();
+        CURRENT.set(count);
+        return count;
+    }
+
+    /**
+     * Ends the count on this thread and returns it; null when none was started.
+     */
+    public static QueryCount stop() {
+        QueryCount count = CURRENT.get();
+        CURRENT.remove();
+        return count;
+    }
+
+    /**
+     * Whether Hibernate created a {@link QueryCountingStatementInspector}; without it every count stays at zero.
+     */
+    public static boolean isInstalled() {
+        return installed;
+    }
+
+    public static Optional<QueryCount> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Fails with an AssertionError listing the statements when more than max were prepared since {@link #start()}.
+     *
+     * @throws IllegalStateException when no count was started on this thread
+     */
+    public static void assertMaxQueries(int max) {
+        QueryCount count = current().orElseThrow(() -> new IllegalStateException("QueryCounter.start() was not called"));
+        if (count.getStatementCount() > max) {
+            StringBuilder message = new StringBuilder("Expected at most ").append(max).append(" queries but got ")
+                    .append(count.getStatementCount()).append(':');
+            for (Map.Entry<String, Integer> statement : count.getStatements().entrySet()) {
+                message.append("\n  ").append(statement.getValue()).append(" x ").append(statement.getKey());
+            }
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    static void inspectorInstalled() {
+        installed = true;
+    }
+
+    static void statementPrepared(String sql) {
+        QueryCount count = CURRENT.get();
+        if (count != null) {
+            count.statementPrepared(sql);
+        }
+    }
+
+    static void statementExecuted(long nanos) {
+        QueryCount count = CURRENT.get();
+        if (count != null) {
+            count.statementExecuted(nanos);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Adds the JDBC execution time of each statement to the {@link QueryCounter} of the current thread and
+ * passes it to the {@link SlowQueryLog}.
+ * Hibernate creates one instance per session; register with {@code hibernate.session.events.auto}.
+ */
+public class QueryCountingSessionListener extends BaseSessionEventListener {
+    private long executionStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        long nanos = System.nanoTime() - executionStart;
+        QueryCounter.statementExecuted(nanos);
+        SlowQueryLog.statementExecuted(nanos);
+    }
+}
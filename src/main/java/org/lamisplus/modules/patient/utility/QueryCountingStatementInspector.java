@@ -0,0 +1,22 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Reports every statement Hibernate prepares to the {@link QueryCounter} of the current thread and to the
+ * {@link SlowQueryLog}; the SQL is not changed.
+ * Register with {@code hibernate.session_factory.statement_inspector}.
+ */
+public class QueryCountingStatementInspector implements StatementInspector {
+
+    public QueryCountingStatementInspector() {
+        QueryCounter.inspectorInstalled();
+    }
+
+    @Override
+    public String inspect(String sql) {
+        QueryCounter.statementPrepared(sql);
+        SlowQueryLog.statementPrepared(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,83 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Hands out connections from the application's DataSource, or from the read replica while the current
+ * thread runs a read-only patient transaction (see {@link ReadReplicaRouting}). A replica that refuses a
+ * connection is skipped until its next lag check.
+ * Register with {@code hibernate.connection.provider_class}.
+ */
+public class ReadReplicaConnectionProvider implements ConnectionProvider, Configurable {
+    private DataSource primary;
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void configure(Map configurationValues) {
+        Object dataSource = configurationValues.get(AvailableSettings.DATASOURCE);
+        if (dataSource instanceof DataSource) {
+            primary = (DataSource) dataSource;
+        }
+        ReadReplicaRouting.providerInstalled();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource replica = ReadReplicaRouting.currentReplica();
+        if (replica != null) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                ReadReplicaRouting.replicaFailed(e);
+            }
+        }
+        return getPrimary().getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || ReadReplicaConnectionProvider.class.isAssignableFrom(unwrapType)
+                || DataSource.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (ConnectionProvider.class.equals(unwrapType) || ReadReplicaConnectionProvider.class.isAssignableFrom(unwrapType)) {
+            return (T) this;
+        }
+        if (DataSource.class.isAssignableFrom(unwrapType)) {
+            return (T) getPrimary();
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    private DataSource getPrimary() {
+        DataSource dataSource = primary != null ? primary : ReadReplicaRouting.getPrimary();
+        if (dataSource == null) {
+            throw new HibernateException("No DataSource configured for " + getClass().getSimpleName());
+        }
+        return dataSource;
+    }
+}
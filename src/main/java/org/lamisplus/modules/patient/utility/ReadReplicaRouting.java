@@ -0,0 +1,94 @@
+package org.lamisplus.modules.patient.utility;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+
+/**
+ * Shared state between the Spring side of read replica routing (which marks read-only service calls and
+ * checks replica lag) and {@link ReadReplicaConnectionProvider}, which Hibernate instantiates itself.
+ */
+@Slf4j
+public final class ReadReplicaRouting {
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+    private static volatile DataSource primary;
+    private static volatile DataSource replica;
+    private static volatile boolean replicaAvailable;
+    private static volatile boolean providerInstalled;
+
+    private ReadReplicaRouting() {
+    }
+
+    /**
+     * Marks whether connections opened by the current thread may go to the replica.
+     *
+     * @return the previous value, to pass to {@link #restore(Boolean)}
+     */
+    public static Boolean set(boolean readOnly) {
+        Boolean previous = READ_ONLY.get();
+        READ_ONLY.set(readOnly);
+        return previous;
+    }
+
+    public static void restore(Boolean previous) {
+        if (previous == null) {
+            READ_ONLY.remove();
+        } else {
+            READ_ONLY.set(previous);
+        }
+    }
+
+    public static boolean isReadOnly() {
+        return Boolean.TRUE.equals(READ_ONLY.get());
+    }
+
+    /**
+     * The replica when the current thread is read-only and the replica is within the allowed lag, otherwise null.
+     */
+    static DataSource currentReplica() {
+        DataSource current = replica;
+        return current != null && replicaAvailable && isReadOnly() ? current : null;
+    }
+
+    public static void setPrimary(DataSource dataSource) {
+        primary = dataSource;
+    }
+
+    static DataSource getPrimary() {
+        return primary;
+    }
+
+    public static void setReplica(DataSource dataSource) {
+        replica = dataSource;
+        if (dataSource == null) {
+            replicaAvailable = false;
+        }
+    }
+
+    public static boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    public static void setReplicaAvailable(boolean available) {
+        replicaAvailable = available;
+    }
+
+    /**
+     * Sends read-only work to the primary until the next lag check finds the replica usable again.
+     */
+    static void replicaFailed(Exception e) {
+        if (replicaAvailable) {
+            log.warn("Read replica unavailable, using the primary: {}", e.getMessage());
+        }
+        replicaAvailable = false;
+    }
+
+    static void providerInstalled() {
+        providerInstalled = true;
+    }
+
+    public static boolean isProviderInstalled() {
+        return providerInstalled;
+    }
+}
@@ -22,11 +22,14 @@ public class RequestBodyUtil {
 
             @Override
             public long contentLength() {
-                try {
-                    return inputStream.available();
-                } catch (IOException e) {
-                    return 0;
-                }
+                // available() is only what can be read without blocking, not the stream length;
+                // an unknown length makes OkHttp send the body chunked
+                return -1;
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return true;
             }
 
             @Override
@@ -0,0 +1,211 @@
+package org.lamisplus.modules.patient.utility;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Uploads a payload in fixed-size segments so that a dropped connection only costs the segment in flight.
+ * <p>
+ * The payload is first spooled into the checkpoint directory together with an {@link UploadCheckpoint}
+ * that is rewritten after every acknowledged segment. Segments are sent as
+ * {@code PUT {url}/{uploadId}/chunks/{index}}; any 2xx response acknowledges the segment. Before resuming,
+ * {@code HEAD {url}/{uploadId}} may report the server's count in an {@code Upload-Chunks-Acknowledged} header,
+ * and the lower of the local and server counts wins. When all segments are acknowledged,
+ * {@code POST {url}/{uploadId}/complete} carries the SHA-256 of the whole payload, and the local files are removed.
+ * Segments and the completion are idempotent on the server, so both are retried under the {@link SyncResilience} policies.
+ */
+@Slf4j
+public class ResumableUploadClient {
+    static final String ACKNOWLEDGED_CHUNKS_HEADER = "Upload-Chunks-Acknowledged";
+    private static final String CHECKPOINT_SUFFIX = ".json";
+    private static final String PAYLOAD_SUFFIX = ".payload";
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final OkHttpClient httpClient;
+    private final Path checkpointDirectory;
+    private final int chunkSize;
+    private final SyncResilience resilience;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ResumableUploadClient(OkHttpClient httpClient, Path checkpointDirectory, int chunkSize) {
+        this(httpClient, checkpointDirectory, chunkSize, SyncResilience.none());
+    }
+
+    public ResumableUploadClient(OkHttpClient httpClient, Path checkpointDirectory, int chunkSize,
+                                 SyncResilience resilience) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.httpClient = httpClient;
+        this.checkpointDirectory = checkpointDirectory;
+        this.chunkSize = chunkSize;
+        this.resilience = resilience;
+    }
+
+    public String upload(String url, byte[] payload) throws IOException {
+        return upload(url, new ByteArrayInputStream(payload));
+    }
+
+    /**
+     * Spools the payload, then sends it segment by segment.
+     *
+     * @return the body of the server's completion response
+     * @throws IOException when a segment fails; the checkpoint is kept so {@link #resumePending()} can continue
+     */
+    public String upload(String url, InputStream payload) throws IOException {
+        Files.createDirectories(checkpointDirectory);
+        String uploadId = PatientUuid.next();
+        Path payloadFile = checkpointDirectory.resolve(uploadId + PAYLOAD_SUFFIX);
+        long totalBytes;
+        String sha256;
+        try (HashingInputStream hashing = new HashingInputStream(Hashing.sha256(), payload)) {
+            totalBytes = Files.copy(hashing, payloadFile);
+            sha256 = hashing.hash().toString();
+        }
+        UploadCheckpoint checkpoint = new UploadCheckpoint();
+        checkpoint.setUploadId(uploadId);
+        checkpoint.setUrl(url);
+        checkpoint.setTotalBytes(totalBytes);
+        checkpoint.setChunkSize(chunkSize);
+        checkpoint.setChunkCount((int) Math.max(1, (totalBytes + chunkSize - 1) / chunkSize));
+        checkpoint.setSha256(sha256);
+        saveCheckpoint(checkpoint);
+        return sendRemaining(checkpoint);
+    }
+
+    /**
+     * Continues every upload that still has a checkpoint, oldest first.
+     *
+     * @return the completion responses of the uploads that finished
+     */
+    public List<String> resumePending() throws IOException {
+        List<String> responses = new ArrayList<>();
+        for (UploadCheckpoint checkpoint : getPendingUploads()) {
+            log.info("resuming upload {} at chunk {} of {}",
+                    checkpoint.getUploadId(), checkpoint.getAcknowledgedChunks(), checkpoint.getChunkCount());
+            responses.add(sendRemaining(checkpoint));
+        }
+        return responses;
+    }
+
+    public List<UploadCheckpoint> getPendingUploads() throws IOException {
+        List<UploadCheckpoint> checkpoints = new ArrayList<>();
+        if (!Files.isDirectory(checkpointDirectory)) {
+            return checkpoints;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(checkpointDirectory, "*" + CHECKPOINT_SUFFIX)) {
+            for (Path file : files) {
+                checkpoints.add(objectMapper.readValue(file.toFile(), UploadCheckpoint.class));
+            }
+        }
+        checkpoints.sort((a, b) -> a.getUploadId().compareTo(b.getUploadId()));
+        return checkpoints;
+    }
+
+    private String sendRemaining(UploadCheckpoint checkpoint) throws IOException {
+        checkpoint.setAcknowledgedChunks(Math.min(checkpoint.getAcknowledgedChunks(), getServerAcknowledgedChunks(checkpoint)));
+        Path payloadFile = checkpointDirectory.resolve(checkpoint.getUploadId() + PAYLOAD_SUFFIX);
+        byte[] buffer = new byte[checkpoint.getChunkSize()];
+        try (RandomAccessFile file = new RandomAccessFile(payloadFile.toFile(), "r")) {
+            for (int index = checkpoint.getAcknowledgedChunks(); index < checkpoint.getChunkCount(); index++) {
+                long offset = (long) index * checkpoint.getChunkSize();
+                int length = (int) Math.min(checkpoint.getChunkSize(), checkpoint.getTotalBytes() - offset);
+                file.seek(offset);
+                file.readFully(buffer, 0, length);
+                sendChunk(checkpoint, index, offset, buffer, length);
+                checkpoint.setAcknowledgedChunks(index + 1);
+                saveCheckpoint(checkpoint);
+            }
+        }
+        String response = complete(checkpoint);
+        Files.deleteIfExists(checkpointDirectory.resolve(checkpoint.getUploadId() + CHECKPOINT_SUFFIX));
+        Files.deleteIfExists(payloadFile);
+        return response;
+    }
+
+    private void sendChunk(UploadCheckpoint checkpoint, int index, long offset, byte[] buffer, int length) throws IOException {
+        Request request = new Request.Builder()
+                .url(checkpoint.getUrl() + "/" + checkpoint.getUploadId() + "/chunks/" + index)
+                .addHeader("User-Agent", "OkHttp Bot")
+                .addHeader("token", "lamisplus")
+                .addHeader("Upload-Id", checkpoint.getUploadId())
+                .addHeader("Chunk-Index", String.valueOf(index))
+                .addHeader("Chunk-Count", String.valueOf(checkpoint.getChunkCount()))
+                .addHeader("Chunk-Offset", String.valueOf(offset))
+                .addHeader("Hash-Value", Hashing.sha256().hashBytes(buffer, 0, length).toString())
+                .put(RequestBody.create(buffer, OCTET_STREAM, 0, length))
+                .build();
+        resilience.call(() -> {
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new SyncHttpException("Chunk " + index + " of upload " + checkpoint.getUploadId()
+                            + " rejected: " + response, response.code());
+                }
+                return null;
+            }
+        });
+    }
+
+    private int getServerAcknowledgedChunks(UploadCheckpoint checkpoint) {
+        Request request = new Request.Builder()
+                .url(checkpoint.getUrl() + "/" + checkpoint.getUploadId())
+                .addHeader("User-Agent", "OkHttp Bot")
+                .addHeader("token", "lamisplus")
+                .head()
+                .build();
+        try {
+            return resilience.callOnce(() -> {
+                try (Response response = httpClient.newCall(request).execute()) {
+                    String acknowledged = response.header(ACKNOWLEDGED_CHUNKS_HEADER);
+                    if (response.isSuccessful() && acknowledged != null) {
+                        return Integer.parseInt(acknowledged.trim());
+                    }
+                    return checkpoint.getAcknowledgedChunks();
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            log.debug("no server progress for upload {}: {}", checkpoint.getUploadId(), e.getMessage());
+        }
+        return checkpoint.getAcknowledgedChunks();
+    }
+
+    private String complete(UploadCheckpoint checkpoint) throws IOException {
+        Request request = new Request.Builder()
+                .url(checkpoint.getUrl() + "/" + checkpoint.getUploadId() + "/complete")
+                .addHeader("User-Agent", "OkHttp Bot")
+                .addHeader("token", "lamisplus")
+                .addHeader("Upload-Id", checkpoint.getUploadId())
+                .addHeader("Chunk-Count", String.valueOf(checkpoint.getChunkCount()))
+                .addHeader("Hash-Value", checkpoint.getSha256())
+                .post(RequestBody.create(new byte[0], null))
+                .build();
+        return resilience.call(() -> {
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new SyncHttpException("Upload " + checkpoint.getUploadId() + " not completed: " + response,
+                            response.code());
+                }
+                return Objects.requireNonNull(response.body()).string();
+            }
+        });
+    }
+
+    private void saveCheckpoint(UploadCheckpoint checkpoint) throws IOException {
+        Path target = checkpointDirectory.resolve(checkpoint.getUploadId() + CHECKPOINT_SUFFIX);
+        Path temp = checkpointDirectory.resolve(checkpoint.getUploadId() + CHECKPOINT_SUFFIX + ".tmp");
+        objectMapper.writeValue(temp.toFile(), checkpoint);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,19 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Puts a controller method in an {@link EndpointLoad} class. Unannotated GETs are {@link EndpointLoad#READ},
+ * other unannotated methods {@link EndpointLoad#WRITE}. Request headers never change the class; see
+ * {@link ConditionalGet} for revalidations.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShedLoad {
+    EndpointLoad value();
+}
@@ -0,0 +1,115 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.lamisplus.modules.patient.domain.dto.SlowQueryDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent statements that ran longer than a threshold, in a fixed-size ring buffer.
+ * <p>
+ * Fed by {@link QueryCountingStatementInspector}, which remembers the statement being prepared on the thread,
+ * and {@link QueryCountingSessionListener}, which reports its execution time; Hibernate creates both itself,
+ * hence the static state. The calling method is only looked up for statements over the threshold.
+ */
+public final class SlowQueryLog {
+    private static final ThreadLocal<String> PREPARED_SQL = new ThreadLocal<>();
+    private static final String CALLER_PACKAGE = "org.lamisplus.modules.patient.";
+
+    private static volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(500);
+    private static SlowQueryDto[] entries = new SlowQueryDto[100];
+    private static int next;
+    private static long recorded;
+
+    private SlowQueryLog() {
+    }
+
+    public static synchronized void configure(long thresholdMillis, int capacity) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        entries = new SlowQueryDto[Math.max(1, capacity)];
+        next = 0;
+        recorded = 0;
+    }
+
+    /**
+     * Returns the captured statements, newest first.
+     */
+    public static synchronized List<SlowQueryDto> getEntries() {
+        List<SlowQueryDto> result = new ArrayList<>();
+        for (int i = 1; i <= entries.length; i++) {
+            SlowQueryDto entry = entries[Math.floorMod(next - i, entries.length)];
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Total number of slow statements seen since the last clear, including those the buffer no longer holds.
+     */
+    public static synchronized long getRecordedCount() {
+        return recorded;
+    }
+
+    public static synchronized void clear() {
+        entries = new SlowQueryDto[entries.length];
+        next = 0;
+        recorded = 0;
+    }
+
+    static void statementPrepared(String sql) {
+        PREPARED_SQL.set(sql);
+    }
+
+    static void statementExecuted(long nanos) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        String sql = PREPARED_SQL.get();
+        if (sql == null) {
+            return;
+        }
+        SlowQueryDto entry = new SlowQueryDto();
+        entry.setExecutedAt(LocalDateTime.now());
+        entry.setSql(QueryCount.normalize(sql));
+        entry.setBindCount(countBindParameters(sql));
+        entry.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(nanos));
+        entry.setCaller(findCaller());
+        entry.setThread(Thread.currentThread().getName());
+        add(entry);
+    }
+
+    private static synchronized void add(SlowQueryDto entry) {
+        entries[next] = entry;
+        next = (next + 1) % entries.length;
+        recorded++;
+    }
+
+    private static int countBindParameters(String sql) {
+        int count = 0;
+        boolean inLiteral = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            } else if (c == '?' && !inLiteral) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String findCaller() {
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            String className = frame.getClassName();
+            if (className.startsWith(CALLER_PACKAGE) && !className.contains("$$")
+                    && (className.contains(".service.") || className.contains(".controller."))) {
+                return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+            }
+        }
+        return null;
+    }
+}
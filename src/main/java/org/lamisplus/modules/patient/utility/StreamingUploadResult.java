@@ -0,0 +1,14 @@
+package org.lamisplus.modules.patient.utility;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StreamingUploadResult {
+    private String uploadId;
+    private String response;
+    private String sha256;
+    private long uncompressedBytes;
+    private long compressedBytes;
+}
@@ -0,0 +1,32 @@
+package org.lamisplus.modules.patient.utility;
+
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * A sync call that reached the server but was answered with a non-2xx status.
+ */
+public class SyncHttpException extends IOException {
+    private final int code;
+
+    public SyncHttpException(Response response) {
+        this("Unexpected code " + response, response.code());
+    }
+
+    public SyncHttpException(String message, int code) {
+        super(message);
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * 5xx, 408 and 429 say nothing about the request itself and may succeed when sent again.
+     */
+    public boolean isServerSide() {
+        return code >= 500 || code == 408 || code == 429;
+    }
+}
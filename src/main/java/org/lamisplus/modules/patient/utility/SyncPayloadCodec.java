@@ -0,0 +1,51 @@
+package org.lamisplus.modules.patient.utility;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes sync payloads as JSON, Smile or CBOR with the same Jackson configuration.
+ * Uploads use the preferred format until a host answers 415, after which that host gets JSON.
+ */
+@Slf4j
+public class SyncPayloadCodec {
+    private final Map<SyncPayloadFormat, ObjectMapper> mappers = new EnumMap<>(SyncPayloadFormat.class);
+    private final Map<String, SyncPayloadFormat> hostFormats = new ConcurrentHashMap<>();
+    private final SyncPayloadFormat preferredFormat;
+
+    public SyncPayloadCodec(SyncPayloadFormat preferredFormat) {
+        this.preferredFormat = preferredFormat;
+        mappers.put(SyncPayloadFormat.JSON, Jackson2ObjectMapperBuilder.json().build());
+        mappers.put(SyncPayloadFormat.SMILE, Jackson2ObjectMapperBuilder.smile().build());
+        mappers.put(SyncPayloadFormat.CBOR, Jackson2ObjectMapperBuilder.cbor().build());
+    }
+
+    public ObjectMapper getMapper(SyncPayloadFormat format) {
+        return mappers.get(format);
+    }
+
+    public byte[] encode(Object payload, SyncPayloadFormat format) throws IOException {
+        return mappers.get(format).writeValueAsBytes(payload);
+    }
+
+    public <T> T decode(byte[] payload, Class<T> type, SyncPayloadFormat format) throws IOException {
+        return mappers.get(format).readValue(payload, type);
+    }
+
+    public SyncPayloadFormat getFormat(String host) {
+        return hostFormats.getOrDefault(host, preferredFormat);
+    }
+
+    public void markUnsupported(String host, SyncPayloadFormat format) {
+        if (format != SyncPayloadFormat.JSON) {
+            log.info("{} does not accept {} sync payloads, falling back to JSON", host, format);
+            hostFormats.put(host, SyncPayloadFormat.JSON);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.lamisplus.modules.patient.utility;
+
+import okhttp3.MediaType;
+
+public enum SyncPayloadFormat {
+    JSON("application/json"),
+    SMILE("application/x-jackson-smile"),
+    CBOR("application/cbor");
+
+    private final String contentType;
+
+    SyncPayloadFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public MediaType getMediaType() {
+        return MediaType.parse(contentType);
+    }
+
+    public static SyncPayloadFormat fromName(String name) {
+        for (SyncPayloadFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sync payload format " + name);
+    }
+}
@@ -0,0 +1,140 @@
+package org.lamisplus.modules.patient.utility;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.vavr.CheckedFunction0;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker, bulkhead and retry around calls to the central server.
+ * <p>
+ * Each attempt first passes the circuit breaker, which rejects it at once while the server is known to be down,
+ * then the bulkhead, which rejects it at once when too many sync calls are already in flight. Neither rejection
+ * holds a thread. Only server-side failures (I/O errors, 5xx, 408, 429) count against the breaker and are retried,
+ * with exponential, randomised waits so that facilities coming back online do not retry in lockstep.
+ * Calls whose body can only be written once must use {@link #callOnce}.
+ */
+@Slf4j
+public class SyncResilience {
+    public static final String INSTANCE = "patientSync";
+
+    private static final Predicate<Throwable> SERVER_SIDE_FAILURE = new ServerSideFailure();
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Retry retry;
+
+    public SyncResilience(CircuitBreaker circuitBreaker, Bulkhead bulkhead, Retry retry) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.retry = retry;
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("sync circuit breaker {}: {}", event.getCircuitBreakerName(), event.getStateTransition()));
+        retry.getEventPublisher().onRetry(event ->
+                log.info("sync call retry {} in {} ms: {}", event.getNumberOfRetryAttempts(),
+                        event.getWaitInterval().toMillis(), event.getLastThrowable().toString()));
+    }
+
+    /**
+     * Lets every call through; used by clients that are created outside the Spring context.
+     */
+    public static SyncResilience none() {
+        return new SyncResilience(
+                CircuitBreaker.of(INSTANCE, CircuitBreakerConfig.custom().failureRateThreshold(100)
+                        .minimumNumberOfCalls(Integer.MAX_VALUE).build()),
+                Bulkhead.of(INSTANCE, BulkheadConfig.custom().maxConcurrentCalls(Integer.MAX_VALUE).build()),
+                Retry.of(INSTANCE, RetryConfig.custom().maxAttempts(1).build()));
+    }
+
+    /**
+     * Defaults used when the patientSync instances are not configured under resilience4j.*.
+     */
+    public static CircuitBreakerConfig defaultCircuitBreakerConfig() {
+        return CircuitBreakerConfig.custom()
+                .slidingWindowSize(10)
+                .minimumNumberOfCalls(5)
+                .failureRateThreshold(50)
+                .slowCallDurationThreshold(Duration.ofMinutes(2))
+                .slowCallRateThreshold(100)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .permittedNumberOfCallsInHalfOpenState(1)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(SERVER_SIDE_FAILURE)
+                .build();
+    }
+
+    public static BulkheadConfig defaultBulkheadConfig() {
+        return BulkheadConfig.custom()
+                .maxConcurrentCalls(4)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+    }
+
+    public static RetryConfig defaultRetryConfig() {
+        return RetryConfig.custom()
+                .maxAttempts(3)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(Duration.ofSeconds(2), 2.0, 0.5))
+                .retryOnException(SERVER_SIDE_FAILURE)
+                .build();
+    }
+
+    /**
+     * Runs a call that may safely be sent again, retrying server-side failures.
+     */
+    public <T> T call(CheckedFunction0<T> call) throws IOException {
+        return execute(Retry.decorateCheckedSupplier(retry, protect(call)));
+    }
+
+    /**
+     * Runs a call that must not be repeated, e.g. one streaming a body that cannot be rewound.
+     */
+    public <T> T callOnce(CheckedFunction0<T> call) throws IOException {
+        return execute(protect(call));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    private <T> CheckedFunction0<T> protect(CheckedFunction0<T> call) {
+        return CircuitBreaker.decorateCheckedSupplier(circuitBreaker, Bulkhead.decorateCheckedSupplier(bulkhead, call));
+    }
+
+    private static <T> T execute(CheckedFunction0<T> call) throws IOException {
+        try {
+            return call.apply();
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Failure predicate for recordFailurePredicate and retryExceptionPredicate when the patientSync
+     * instances are configured under resilience4j.*.
+     */
+    public static class ServerSideFailure implements Predicate<Throwable> {
+        @Override
+        public boolean test(Throwable e) {
+            return e instanceof SyncHttpException ? ((SyncHttpException) e).isServerSide() : e instanceof IOException;
+        }
+    }
+}
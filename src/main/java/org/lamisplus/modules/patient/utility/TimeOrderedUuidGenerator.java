@@ -0,0 +1,36 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generates version 7 style uuids: a 48 bit millisecond timestamp, a 12 bit counter and 62 random bits.
+ * Values generated by one instance are strictly increasing, so new keys land at the right edge of the
+ * uuid btree indexes instead of being scattered across them.
+ */
+public class TimeOrderedUuidGenerator implements UuidGenerator {
+    private static final int MAX_SEQUENCE = 0xFFF;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private long lastTimestamp = -1L;
+
+    private int sequence;
+
+    @Override
+    public synchronized UUID generate() {
+        long timestamp = System.currentTimeMillis();
+        if (timestamp > lastTimestamp) {
+            lastTimestamp = timestamp;
+            // start low in the counter space to leave room for a burst within the same millisecond
+            sequence = random.nextInt(MAX_SEQUENCE >> 1);
+        } else if (++sequence > MAX_SEQUENCE) {
+            // counter exhausted or clock moved backwards: borrow the next millisecond
+            lastTimestamp++;
+            sequence = 0;
+        }
+        long mostSigBits = (lastTimestamp << 16) | 0x7000L | sequence;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,17 @@
+package org.lamisplus.modules.patient.utility;
+
+import lombok.Data;
+
+/**
+ * Local progress of a resumable upload, stored as JSON next to the spooled payload.
+ */
+@Data
+public class UploadCheckpoint {
+    private String uploadId;
+    private String url;
+    private long totalBytes;
+    private int chunkSize;
+    private int chunkCount;
+    private int acknowledgedChunks;
+    private String sha256;
+}
@@ -0,0 +1,12 @@
+package org.lamisplus.modules.patient.utility;
+
+import java.util.UUID;
+
+/**
+ * Source of the uuid values used as keys for patient, visit and encounter records.
+ */
+@FunctionalInterface
+public interface UuidGenerator {
+
+    UUID generate();
+}
@@ -0,0 +1,85 @@
+-- Creates one monthly range partition per month from from_month up to months_ahead months after the current month.
+-- Rows that already landed in the default partition for a new month are moved into the new partition, which is
+-- attached afterwards: creating the partition directly would fail once the default partition holds such rows.
+CREATE OR REPLACE FUNCTION patient_create_monthly_partitions(parent_table text, from_month date, months_ahead integer)
+    RETURNS void
+    LANGUAGE plpgsql
+AS
+$$
+DECLARE
+    month_start       date := date_trunc('month', from_month)::date;
+    month_end         date;
+    last_month        date := (date_trunc('month', now()) + make_interval(months => months_ahead))::date;
+    partition_name    text;
+    default_partition text := parent_table || '_default';
+    partition_key     text;
+    misplaced         boolean;
+BEGIN
+    SELECT a.attname
+    INTO partition_key
+    FROM pg_partitioned_table pt
+             JOIN pg_attribute a ON a.attrelid = pt.partrelid AND a.attnum = pt.partattrs[0]
+    WHERE pt.partrelid = to_regclass(parent_table);
+
+    WHILE month_start <= last_month
+        LOOP
+            partition_name := parent_table || '_' || to_char(month_start, 'YYYYMM');
+            month_end := (month_start + interval '1 month')::date;
+            IF to_regclass(partition_name) IS NULL THEN
+                misplaced := false;
+                IF to_regclass(default_partition) IS NOT NULL THEN
+                    EXECUTE format('SELECT EXISTS(SELECT 1 FROM %I WHERE %I >= %L AND %I < %L)',
+                                   default_partition, partition_key, month_start, partition_key, month_end)
+                        INTO misplaced;
+                END IF;
+                IF misplaced THEN
+                    -- the moved rows are deleted and re-inserted, which must not trip the visit delete guard
+                    PERFORM set_config('patient.moving_partition_rows', 'on', true);
+                    EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS)', partition_name, parent_table);
+                    EXECUTE format('WITH moved AS (DELETE FROM %I WHERE %I >= %L AND %I < %L RETURNING *) ' ||
+                                   'INSERT INTO %I SELECT * FROM moved',
+                                   default_partition, partition_key, month_start, partition_key, month_end,
+                                   partition_name);
+                    EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                                   parent_table, partition_name, month_start, month_end);
+                    PERFORM set_config('patient.moving_partition_rows', 'off', true);
+                    RAISE NOTICE 'moved rows of % from % into %', month_start, default_partition, partition_name;
+                ELSE
+                    EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                                   partition_name, parent_table, month_start, month_end);
+                END IF;
+            END IF;
+            month_start := month_end;
+        END LOOP;
+END;
+$$;
+
+-- patient_encounter.visit_id cannot reference the partitioned patient_visit, so besides the insert/update check on
+-- patient_encounter this stops a visit from being deleted, or its uuid changed, while encounters still point to it.
+CREATE OR REPLACE FUNCTION patient_visit_check_encounters()
+    RETURNS trigger
+    LANGUAGE plpgsql
+AS
+$$
+BEGIN
+    IF current_setting('patient.moving_partition_rows', true) = 'on' THEN
+        RETURN OLD;
+    END IF;
+    IF TG_OP = 'UPDATE' AND NEW.uuid = OLD.uuid THEN
+        RETURN NEW;
+    END IF;
+    IF EXISTS(SELECT 1 FROM patient_encounter WHERE visit_id = OLD.uuid)
+        AND NOT EXISTS(SELECT 1 FROM patient_visit WHERE uuid = OLD.uuid) THEN
+        RAISE EXCEPTION 'patient_visit % is still referenced from patient_encounter', OLD.uuid
+            USING ERRCODE = 'foreign_key_violation';
+    END IF;
+    RETURN OLD;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS trg_patient_visit_check_encounters ON patient_visit;
+CREATE TRIGGER trg_patient_visit_check_encounters
+    AFTER DELETE OR UPDATE OF uuid
+    ON patient_visit
+    FOR EACH ROW
+EXECUTE PROCEDURE patient_visit_check_encounters();
@@ -0,0 +1,94 @@
+-- Creates one monthly range partition per month from from_month up to months_ahead months after the current month.
+CREATE OR REPLACE FUNCTION patient_create_monthly_partitions(parent_table text, from_month date, months_ahead integer)
+    RETURNS void
+    LANGUAGE plpgsql
+AS
+$$
+DECLARE
+    month_start    date := date_trunc('month', from_month)::date;
+    last_month     date := (date_trunc('month', now()) + make_interval(months => months_ahead))::date;
+    partition_name text;
+BEGIN
+    WHILE month_start <= last_month
+        LOOP
+            partition_name := parent_table || '_' || to_char(month_start, 'YYYYMM');
+            IF to_regclass(partition_name) IS NULL THEN
+                EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                               partition_name, parent_table, month_start, (month_start + interval '1 month')::date);
+            END IF;
+            month_start := (month_start + interval '1 month')::date;
+        END LOOP;
+END;
+$$;
+
+-- A partitioned patient_visit cannot keep a uuid-only unique constraint, so the
+-- patient_encounter.visit_id foreign key is replaced by this check.
+CREATE OR REPLACE FUNCTION patient_encounter_check_visit()
+    RETURNS trigger
+    LANGUAGE plpgsql
+AS
+$$
+BEGIN
+    IF NOT EXISTS(SELECT 1 FROM patient_visit WHERE uuid = NEW.visit_id) THEN
+        RAISE EXCEPTION 'patient_visit % does not exist', NEW.visit_id USING ERRCODE = 'foreign_key_violation';
+    END IF;
+    RETURN NEW;
+END;
+$$;
+
+ALTER TABLE patient_encounter DROP CONSTRAINT IF EXISTS fk_patient_encounter_on_person_uuid;
+ALTER TABLE patient_encounter DROP CONSTRAINT IF EXISTS fk_patient_encounter_on_visit;
+ALTER TABLE patient_visit DROP CONSTRAINT IF EXISTS fk_patient_visit_on_person_uuid;
+
+ALTER TABLE patient_visit RENAME TO patient_visit_unpartitioned;
+ALTER TABLE patient_encounter RENAME TO patient_encounter_unpartitioned;
+
+-- patient_visit
+CREATE TABLE patient_visit (LIKE patient_visit_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (visit_start_date);
+CREATE TABLE patient_visit_default PARTITION OF patient_visit DEFAULT;
+SELECT patient_create_monthly_partitions('patient_visit',
+                                         (SELECT COALESCE(MIN(visit_start_date), now()) FROM patient_visit_unpartitioned)::date,
+                                         3);
+INSERT INTO patient_visit SELECT * FROM patient_visit_unpartitioned;
+
+-- patient_encounter
+CREATE TABLE patient_encounter (LIKE patient_encounter_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (encounter_date);
+CREATE TABLE patient_encounter_default PARTITION OF patient_encounter DEFAULT;
+SELECT patient_create_monthly_partitions('patient_encounter',
+                                         (SELECT COALESCE(MIN(encounter_date), now()) FROM patient_encounter_unpartitioned)::date,
+                                         3);
+INSERT INTO patient_encounter SELECT * FROM patient_encounter_unpartitioned;
+
+DROP TABLE patient_encounter_unpartitioned;
+DROP TABLE patient_visit_unpartitioned;
+
+CREATE SEQUENCE patient_visit_id_seq OWNED BY patient_visit.id;
+SELECT setval('patient_visit_id_seq', COALESCE((SELECT MAX(id) FROM patient_visit), 0) + 1, false);
+ALTER TABLE patient_visit ALTER COLUMN id SET DEFAULT nextval('patient_visit_id_seq');
+
+CREATE SEQUENCE patient_encounter_id_seq OWNED BY patient_encounter.id;
+SELECT setval('patient_encounter_id_seq', COALESCE((SELECT MAX(id) FROM patient_encounter), 0) + 1, false);
+ALTER TABLE patient_encounter ALTER COLUMN id SET DEFAULT nextval('patient_encounter_id_seq');
+
+-- Unique constraints on a partitioned table must include the partition key
+ALTER TABLE patient_visit ADD CONSTRAINT pk_patient_visit PRIMARY KEY (id, visit_start_date);
+ALTER TABLE patient_visit ADD CONSTRAINT uc_patient_visit_uuid UNIQUE (uuid, visit_start_date);
+CREATE INDEX idx_patient_visit_person_uuid ON patient_visit (person_uuid);
+CREATE INDEX idx_patient_visit_open ON patient_visit (facility_id) WHERE visit_end_date IS NULL;
+ALTER TABLE patient_visit
+    ADD CONSTRAINT FK_PATIENT_VISIT_ON_PERSON_UUID FOREIGN KEY (person_uuid) REFERENCES patient_person (uuid);
+
+ALTER TABLE patient_encounter ADD CONSTRAINT pk_patient_encounter PRIMARY KEY (id, encounter_date);
+ALTER TABLE patient_encounter ADD CONSTRAINT uc_patient_encounter_uuid UNIQUE (uuid, encounter_date);
+CREATE INDEX idx_patient_encounter_person_uuid ON patient_encounter (person_uuid);
+CREATE INDEX idx_patient_encounter_visit_id ON patient_encounter (visit_id);
+CREATE INDEX idx_patient_encounter_open_visit_service ON patient_encounter (visit_id, service_code)
+    WHERE status = 'PENDING' AND archived = 0;
+ALTER TABLE patient_encounter
+    ADD CONSTRAINT FK_PATIENT_ENCOUNTER_ON_PERSON_UUID FOREIGN KEY (person_uuid) REFERENCES patient_person (uuid);
+
+CREATE TRIGGER trg_patient_encounter_check_visit
+    AFTER INSERT OR UPDATE OF visit_id
+    ON patient_encounter
+    FOR EACH ROW
+EXECUTE PROCEDURE patient_encounter_check_visit();
@@ -0,0 +1,164 @@
+package org.lamisplus.modules.patient.controller;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives patient API endpoints of a running base application at high concurrency and prints throughput and
+ * latency percentiles per endpoint. Run it once against a deployment of the module built and started without
+ * virtual threads and once with them (see README "Virtual threads"), with the same
+ * patient.benchmark.results file: each run appends its rows under its label, and the second run prints both
+ * side by side.
+ * <pre>
+ * mvn test -Dtest=VirtualThreadsLoadTest -Dpatient.benchmark.base-url=http://localhost:8080 \
+ *     -Dpatient.benchmark.token=$TOKEN -Dpatient.benchmark.label=platform -Dpatient.benchmark.results=load.csv
+ * </pre>
+ */
+class VirtualThreadsLoadTest {
+    private static final String DEFAULT_ENDPOINTS = "/api/v1/patient?pageNo=0&pageSize=20," +
+            "/api/v1/patient/get-all-patient-pageable?pageNo=0&pageSize=20&searchParam=*," +
+            "/api/v1/patient/checked-in";
+
+    @Test
+    @EnabledIfSystemProperty(named = "patient.benchmark.base-url", matches = ".+")
+    void compareThroughputUnderConcurrency() throws Exception {
+        String baseUrl = System.getProperty("patient.benchmark.base-url");
+        String token = System.getProperty("patient.benchmark.token", "");
+        String label = System.getProperty("patient.benchmark.label", "run");
+        int concurrency = Integer.getInteger("patient.benchmark.concurrency", 800);
+        long seconds = Long.getLong("patient.benchmark.seconds", 60);
+        List<String> endpoints = Arrays.asList(System.getProperty("patient.benchmark.endpoints", DEFAULT_ENDPOINTS).split(","));
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(concurrency, 1, TimeUnit.MINUTES))
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+        List<String> rows = new ArrayList<>();
+        System.out.printf("%-10s %-60s %10s %8s %8s %8s %8s%n", "label", "endpoint", "req/s", "p50 ms", "p99 ms",
+                "errors", "429/503");
+        for (String endpoint : endpoints) {
+            Result result = run(client, baseUrl + endpoint, token, concurrency, seconds);
+            System.out.printf("%-10s %-60s %10.1f %8d %8d %8d %8d%n", label, endpoint, result.throughput(),
+                    result.percentile(50), result.percentile(99), result.errors.get(), result.shed.get());
+            rows.add(String.join(";", label, endpoint, String.format("%.1f", result.throughput()),
+                    String.valueOf(result.percentile(50)), String.valueOf(result.percentile(99)),
+                    String.valueOf(result.errors.get()), String.valueOf(result.shed.get())));
+            assertTrue(result.latencies.size() > 0, "no request to " + endpoint + " completed");
+        }
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+
+        String resultsFile = System.getProperty("patient.benchmark.results");
+        if (resultsFile != null) {
+            printComparison(append(Paths.get(resultsFile), rows));
+        }
+    }
+
+    private static Result run(OkHttpClient client, String url, String token, int concurrency, long seconds)
+            throws Exception {
+        Request request = new Request.Builder().url(url).header("Authorization", "Bearer " + token).build();
+        Result result = new Result(seconds);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(clients.submit(() -> {
+                    List<Long> latencies = new ArrayList<>();
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        try (Response response = client.newCall(request).execute()) {
+                            if (response.code() == 429 || response.code() == 503) {
+                                result.shed.incrementAndGet();
+                            } else if (!response.isSuccessful()) {
+                                result.errors.incrementAndGet();
+                            } else {
+                                response.body().bytes();
+                                latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                            }
+                        } catch (IOException e) {
+                            result.errors.incrementAndGet();
+                        }
+                    }
+                    return latencies;
+                }));
+            }
+            for (Future<List<Long>> future : futures) {
+                result.latencies.addAll(future.get());
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        Collections.sort(result.latencies);
+        return result;
+    }
+
+    private static List<String> append(Path file, List<String> rows) throws IOException {
+        Files.write(file, rows, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prints the latest run of every label per endpoint next to each other.
+     */
+    private static void printComparison(List<String> rows) {
+        Map<String, Map<String, String[]>> byEndpoint = new LinkedHashMap<>();
+        for (String row : rows) {
+            String[] columns = row.split(";");
+            byEndpoint.computeIfAbsent(columns[1], endpoint -> new LinkedHashMap<>()).put(columns[0], columns);
+        }
+        System.out.println();
+        byEndpoint.forEach((endpoint, runs) -> {
+            System.out.println(endpoint);
+            runs.forEach((label, columns) -> System.out.printf("  %-10s %10s req/s  p50 %6s ms  p99 %6s ms  errors %s  shed %s%n",
+                    label, columns[2], columns[3], columns[4], columns[5], columns[6]));
+        });
+    }
+
+    private static final class Result {
+        private final long seconds;
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicInteger shed = new AtomicInteger();
+
+        private Result(long seconds) {
+            this.seconds = seconds;
+        }
+
+        private double throughput() {
+            return latencies.size() / (double) seconds;
+        }
+
+        private long percentile(int percentile) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.size()) - 1;
+            return latencies.get(Math.max(0, index));
+        }
+    }
+}
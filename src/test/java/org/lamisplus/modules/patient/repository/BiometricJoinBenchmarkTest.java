@@ -0,0 +1,79 @@
+package org.lamisplus.modules.patient.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Times the biometric list joins with the uuid side cast to VARCHAR (as before) and with the VARCHAR side
+ * converted through patient_uuid() (as now), on synthetic patient_person / biometric tables.
+ * Runs only against a scratch database, see README "Benchmarks"; patient.benchmark.rows persons are created
+ * with six biometric rows each for two thirds of them.
+ */
+class BiometricJoinBenchmarkTest {
+    private static final int RUNS = 10;
+
+    private static final String PERSON_CAST = "SELECT count(*) FROM bench_person p JOIN (SELECT person_uuid FROM bench_biometric " +
+            "GROUP BY person_uuid HAVING count(person_uuid) >= 6) b ON CAST(p.uuid AS VARCHAR) = b.person_uuid " +
+            "WHERE p.archived = 0 AND p.facility_id = 1";
+
+    private static final String BIOMETRIC_CAST = "SELECT count(*) FROM bench_person p JOIN (SELECT person_uuid FROM bench_biometric " +
+            "GROUP BY person_uuid HAVING count(person_uuid) >= 6) b ON p.uuid = bench_patient_uuid(b.person_uuid) " +
+            "WHERE p.archived = 0 AND p.facility_id = 1";
+
+    private static final String WITHOUT_PERSON_CAST = "SELECT count(*) FROM bench_person p WHERE CAST(p.uuid AS VARCHAR) NOT IN " +
+            "(SELECT person_uuid FROM bench_biometric) AND p.archived = 0 AND p.facility_id = 1";
+
+    private static final String WITHOUT_BIOMETRIC_CAST = "SELECT count(*) FROM bench_person p WHERE NOT EXISTS " +
+            "(SELECT 1 FROM bench_biometric b WHERE bench_patient_uuid(b.person_uuid) = p.uuid) AND p.archived = 0 AND p.facility_id = 1";
+
+    @Test
+    @EnabledIfSystemProperty(named = "patient.benchmark.jdbc-url", matches = ".+")
+    void compareUuidCastDirection() throws SQLException {
+        int rows = Integer.getInteger("patient.benchmark.rows", 200_000);
+        try (Connection connection = DriverManager.getConnection(System.getProperty("patient.benchmark.jdbc-url"),
+                System.getProperty("patient.benchmark.username"), System.getProperty("patient.benchmark.password"));
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_biometric, bench_person");
+            statement.execute("CREATE TABLE bench_person (id BIGSERIAL PRIMARY KEY, uuid UUID NOT NULL UNIQUE, " +
+                    "facility_id BIGINT NOT NULL, archived INTEGER NOT NULL)");
+            statement.execute("CREATE TABLE bench_biometric (id BIGSERIAL PRIMARY KEY, person_uuid VARCHAR(255))");
+            statement.execute("CREATE INDEX ON bench_biometric (person_uuid)");
+            statement.execute("CREATE OR REPLACE FUNCTION bench_patient_uuid(VARCHAR) RETURNS uuid LANGUAGE sql IMMUTABLE AS " +
+                    "$$ SELECT CASE WHEN $1 ~* '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$' " +
+                    "THEN CAST($1 AS uuid) END $$");
+            statement.execute("INSERT INTO bench_person (uuid, facility_id, archived) " +
+                    "SELECT md5(i::text)::uuid, 1 + i % 3, 0 FROM generate_series(1, " + rows + ") i");
+            statement.execute("INSERT INTO bench_biometric (person_uuid) SELECT CAST(uuid AS VARCHAR) " +
+                    "FROM bench_person, generate_series(1, 6) WHERE id % 3 <> 0");
+            statement.execute("ANALYZE bench_person");
+            statement.execute("ANALYZE bench_biometric");
+
+            System.out.printf("%-32s %10s %10s%n", "query", "cast uuid", "cast varchar");
+            System.out.printf("%-32s %10.1f %10.1f%n", "with biometric (ms)",
+                    time(statement, PERSON_CAST), time(statement, BIOMETRIC_CAST));
+            System.out.printf("%-32s %10.1f %10.1f%n", "without biometric (ms)",
+                    time(statement, WITHOUT_PERSON_CAST), time(statement, WITHOUT_BIOMETRIC_CAST));
+        }
+    }
+
+    private static double time(Statement statement, String sql) throws SQLException {
+        run(statement, sql);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            run(statement, sql);
+        }
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    private static void run(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+        }
+    }
+}
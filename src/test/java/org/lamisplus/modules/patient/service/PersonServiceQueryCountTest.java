@@ -0,0 +1,67 @@
+package org.lamisplus.modules.patient.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamisplus.modules.base.service.MenuService;
+import org.lamisplus.modules.patient.domain.entity.Person;
+import org.lamisplus.modules.patient.repository.PersonRepository;
+import org.lamisplus.modules.patient.repository.VisitRepository;
+import org.lamisplus.modules.patient.utility.PatientUuid;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pins the repository calls getDtoFromPerson makes per person: one latest-visit lookup and one biometric count.
+ * Every page of person DTOs therefore costs two repository calls per row (a known N+1); this test fails when a
+ * change adds a third, and must be tightened when the lookups are batched.
+ * The repositories are mocks, so this is a contract on the calls, not on the SQL Hibernate prepares for them;
+ * QueryCounter measures the latter against a real session.
+ */
+class PersonServiceQueryCountTest {
+    private static final int PAGE_SIZE = 20;
+
+    private PersonRepository personRepository;
+    private VisitRepository visitRepository;
+    private PersonService personService;
+
+    @BeforeEach
+    void setUp() {
+        personRepository = mock(PersonRepository.class);
+        visitRepository = mock(VisitRepository.class);
+        MenuService menuService = mock(MenuService.class);
+        when(menuService.exist("BiometricModule")).thenReturn(true);
+        when(visitRepository.findFirstByPersonAndArchivedAndVisitStartDateNotNullOrderByLastModifiedDateDesc(any(), anyInt()))
+                .thenReturn(Optional.empty());
+        when(personRepository.getBiometricCountByPersonUuid(anyString())).thenReturn(6);
+        personService = new PersonService(personRepository, null, null, visitRepository, null, null,
+                menuService, null);
+    }
+
+    @Test
+    void getDtoFromPersonMakesTwoRepositoryCallsPerPerson() {
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            personService.getDtoFromPerson(person());
+        }
+
+        verify(visitRepository, times(PAGE_SIZE))
+                .findFirstByPersonAndArchivedAndVisitStartDateNotNullOrderByLastModifiedDateDesc(any(), anyInt());
+        verify(personRepository, times(PAGE_SIZE)).getBiometricCountByPersonUuid(anyString());
+        verifyNoMoreInteractions(visitRepository, personRepository);
+    }
+
+    private static Person person() {
+        Person person = new Person();
+        person.setUuid(PatientUuid.next());
+        person.setArchived(0);
+        return person;
+    }
+}
@@ -0,0 +1,155 @@
+package org.lamisplus.modules.patient.utility;
+
+import com.google.common.hash.Hashing;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumableUploadClientTest {
+    private static final byte[] PAYLOAD = "0123456789".getBytes(StandardCharsets.UTF_8);
+    private static final int CHUNK_SIZE = 4;
+
+    @TempDir
+    Path checkpointDirectory;
+
+    private MockWebServer server;
+    private ResumableUploadClient client;
+    private String url;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        url = server.url("/api/sync/uploads").toString();
+        // an interrupted request must surface as a failure instead of being sent again by OkHttp
+        OkHttpClient httpClient = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        client = new ResumableUploadClient(httpClient, checkpointDirectory, CHUNK_SIZE);
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void resumesAfterInterruptedChunk() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        assertThrows(IOException.class, () -> client.upload(url, PAYLOAD));
+        List<UploadCheckpoint> pending = client.getPendingUploads();
+        assertEquals(1, pending.size());
+        assertEquals(1, pending.get(0).getAcknowledgedChunks());
+        assertEquals(3, pending.get(0).getChunkCount());
+
+        String uploadId = pending.get(0).getUploadId();
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        assertTrue(server.takeRequest().getPath().endsWith(uploadId + "/chunks/0"));
+        assertTrue(server.takeRequest().getPath().endsWith(uploadId + "/chunks/1"));
+
+        server.enqueue(new MockResponse().addHeader(ResumableUploadClient.ACKNOWLEDGED_CHUNKS_HEADER, "1"));
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setBody("done"));
+
+        assertEquals(Collections.singletonList("done"), client.resumePending());
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        assertTrue(server.takeRequest().getPath().endsWith(uploadId + "/chunks/1"));
+        assertTrue(server.takeRequest().getPath().endsWith(uploadId + "/chunks/2"));
+        assertTrue(server.takeRequest().getPath().endsWith(uploadId + "/complete"));
+        assertTrue(client.getPendingUploads().isEmpty());
+        try (Stream<Path> files = Files.list(checkpointDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void resumesFromTheLowerOfLocalAndServerProgress() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setResponseCode(503));
+        assertThrows(IOException.class, () -> client.upload(url, PAYLOAD));
+        assertEquals(2, client.getPendingUploads().get(0).getAcknowledgedChunks());
+        skipRequests(4);
+
+        // the server lost chunk 1, so it is sent again although the local checkpoint has it
+        server.enqueue(new MockResponse().addHeader(ResumableUploadClient.ACKNOWLEDGED_CHUNKS_HEADER, "1"));
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setBody("done"));
+        client.resumePending();
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        assertEquals("1", server.takeRequest().getHeader("Chunk-Index"));
+        assertEquals("2", server.takeRequest().getHeader("Chunk-Index"));
+        assertTrue(server.takeRequest().getPath().endsWith("/complete"));
+    }
+
+    @Test
+    void ignoresHigherServerProgress() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setResponseCode(503));
+        assertThrows(IOException.class, () -> client.upload(url, PAYLOAD));
+        skipRequests(3);
+
+        server.enqueue(new MockResponse().addHeader(ResumableUploadClient.ACKNOWLEDGED_CHUNKS_HEADER, "3"));
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setBody("done"));
+        client.resumePending();
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        assertEquals("1", server.takeRequest().getHeader("Chunk-Index"));
+        assertEquals("2", server.takeRequest().getHeader("Chunk-Index"));
+        assertTrue(server.takeRequest().getPath().endsWith("/complete"));
+    }
+
+    @Test
+    void completesWithHashOfWholePayload() throws Exception {
+        server.enqueue(new MockResponse());
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse());
+        }
+        server.enqueue(new MockResponse().setBody("done"));
+
+        assertEquals("done", client.upload(url, PAYLOAD));
+        server.takeRequest();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            RecordedRequest chunk = server.takeRequest();
+            byte[] body = chunk.getBody().readByteArray();
+            assertEquals(Hashing.sha256().hashBytes(body).toString(), chunk.getHeader("Hash-Value"));
+            assertEquals(String.valueOf(i * CHUNK_SIZE), chunk.getHeader("Chunk-Offset"));
+            received.write(body);
+        }
+        RecordedRequest complete = server.takeRequest();
+        assertEquals("POST", complete.getMethod());
+        assertEquals("3", complete.getHeader("Chunk-Count"));
+        assertEquals(Hashing.sha256().hashBytes(PAYLOAD).toString(), complete.getHeader("Hash-Value"));
+        assertArrayEquals(PAYLOAD, received.toByteArray());
+    }
+
+    private void skipRequests(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            server.takeRequest();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encodes a batch shaped like a person change feed page in every sync format and checks that it decodes to the
+ * same value and that the binary formats are smaller. The timing comparison runs only when asked for, with
+ * <pre>
+ * mvn test -Dtest=SyncPayloadCodecTest -Dpatient.benchmark.codec=true -Dpatient.benchmark.rows=5000
+ * </pre>
+ */
+class SyncPayloadCodecTest {
+    private final SyncPayloadCodec codec = new SyncPayloadCodec(SyncPayloadFormat.JSON);
+
+    @Test
+    void binaryFormatsRoundTripAndAreSmallerThanJson() throws IOException {
+        List<Map<String, Object>> batch = personBatch(500);
+
+        Map<SyncPayloadFormat, Integer> sizes = new EnumMap<>(SyncPayloadFormat.class);
+        for (SyncPayloadFormat format : SyncPayloadFormat.values()) {
+            byte[] encoded = codec.encode(batch, format);
+            assertEquals(batch, codec.decode(encoded, List.class, format));
+            sizes.put(format, encoded.length);
+        }
+        assertTrue(sizes.get(SyncPayloadFormat.SMILE) < sizes.get(SyncPayloadFormat.JSON));
+        assertTrue(sizes.get(SyncPayloadFormat.CBOR) < sizes.get(SyncPayloadFormat.JSON));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "patient.benchmark.codec", matches = "true")
+    void compareFormats() throws IOException {
+        int rows = Integer.getInteger("patient.benchmark.rows", 500);
+        int iterations = Integer.getInteger("patient.benchmark.iterations", 20);
+        List<Map<String, Object>> batch = personBatch(rows);
+
+        System.out.printf("%-6s %10s %12s %12s%n", "format", "bytes", "encode ms", "decode ms");
+        for (SyncPayloadFormat format : SyncPayloadFormat.values()) {
+            byte[] encoded = codec.encode(batch, format);
+            long encodeStart = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                codec.encode(batch, format);
+            }
+            long decodeStart = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                codec.decode(encoded, List.class, format);
+            }
+            long end = System.nanoTime();
+            System.out.printf("%-6s %10d %12.2f %12.2f%n", format, encoded.length,
+                    (decodeStart - encodeStart) / 1e6 / iterations, (end - decodeStart) / 1e6 / iterations);
+        }
+    }
+
+    private static List<Map<String, Object>> personBatch(int rows) {
+        List<Map<String, Object>> batch = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> person = new LinkedHashMap<>();
+            person.put("id", 100_000 + i);
+            person.put("uuid", PatientUuid.next());
+            person.put("facilityId", 1842);
+            person.put("hospitalNumber", "HN-" + (20_000 + i));
+            person.put("firstName", "First" + i);
+            person.put("surname", "Surname" + i);
+            person.put("sex", i % 2 == 0 ? "Female" : "Male");
+            person.put("dateOfBirth", "1987-03-" + (10 + i % 18));
+            person.put("dateOfRegistration", "2021-11-" + (10 + i % 18));
+            person.put("lastModifiedDate", "2026-10-19T08:15:" + (10 + i % 50));
+            person.put("archived", 0);
+            Map<String, Object> address = new LinkedHashMap<>();
+            address.put("city", "Abuja");
+            address.put("stateId", 15);
+            address.put("line", "Plot " + i + " Garki");
+            person.put("address", address);
+            batch.add(person);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,98 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares insert throughput and uuid index size for random (v4) and time-ordered keys.
+ * Runs only against a scratch database given on the command line, e.g.
+ * <pre>
+ * mvn test -Dtest=UuidKeyBenchmarkTest -Dpatient.benchmark.jdbc-url=jdbc:postgresql://localhost:5432/bench \
+ *     -Dpatient.benchmark.username=postgres -Dpatient.benchmark.password=... -Dpatient.benchmark.rows=1000000
+ * </pre>
+ */
+class UuidKeyBenchmarkTest {
+    private static final int BATCH_SIZE = 1000;
+
+    @Test
+    void timeOrderedUuidsAreIncreasing() {
+        TimeOrderedUuidGenerator generator = new TimeOrderedUuidGenerator();
+        UUID previous = generator.generate();
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = generator.generate();
+            assertTrue(Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits()) > 0);
+            previous = next;
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "patient.benchmark.jdbc-url", matches = ".+")
+    void compareInsertThroughputAndIndexSize() throws SQLException {
+        int rows = Integer.getInteger("patient.benchmark.rows", 1_000_000);
+        try (Connection connection = DriverManager.getConnection(System.getProperty("patient.benchmark.jdbc-url"),
+                System.getProperty("patient.benchmark.username"), System.getProperty("patient.benchmark.password"))) {
+            Result random = run(connection, "bench_uuid_random", rows, UUID::randomUUID);
+            Result ordered = run(connection, "bench_uuid_ordered", rows, new TimeOrderedUuidGenerator());
+            System.out.printf("%-10s %12s %14s %14s%n", "keys", "rows/s", "index bytes", "table bytes");
+            System.out.printf("%-10s %12.0f %14d %14d%n", "random", random.rowsPerSecond, random.indexBytes, random.tableBytes);
+            System.out.printf("%-10s %12.0f %14d %14d%n", "ordered", ordered.rowsPerSecond, ordered.indexBytes, ordered.tableBytes);
+            assertTrue(ordered.indexBytes <= random.indexBytes, "time-ordered keys should not give a larger index");
+        }
+    }
+
+    private static Result run(Connection connection, String table, int rows, UuidGenerator generator) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + table);
+            // the shape of patient_visit's keys: identity id, unique uuid, a person_uuid join key
+            statement.execute("CREATE TABLE " + table + " (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "uuid UUID NOT NULL UNIQUE, person_uuid UUID NOT NULL, visit_start_date TIMESTAMP)");
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        long start = System.nanoTime();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + table + " (uuid, person_uuid, visit_start_date) VALUES (?, ?, now())")) {
+            for (int i = 1; i <= rows; i++) {
+                insert.setObject(1, generator.generate(), Types.OTHER);
+                insert.setObject(2, generator.generate(), Types.OTHER);
+                insert.addBatch();
+                if (i % BATCH_SIZE == 0 || i == rows) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT pg_relation_size('" + table + "_uuid_key'), " +
+                     "pg_relation_size('" + table + "')")) {
+            resultSet.next();
+            return new Result(rows / seconds, resultSet.getLong(1), resultSet.getLong(2));
+        }
+    }
+
+    private static class Result {
+        private final double rowsPerSecond;
+        private final long indexBytes;
+        private final long tableBytes;
+
+        Result(double rowsPerSecond, long indexBytes, long tableBytes) {
+            this.rowsPerSecond = rowsPerSecond;
+            this.indexBytes = indexBytes;
+            this.tableBytes = tableBytes;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.lamisplus.modules.patient.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the same number of blocking tasks on a Tomcat-sized platform thread pool and on one virtual thread per
+ * task, and prints the throughput of each. The tasks only wait, as a request waiting for the database does.
+ * Needs JDK 21 or later; run with
+ * <pre>
+ * mvn test -Pvirtual-threads -Dtest=VirtualThreadsBenchmarkTest -Dpatient.benchmark.tasks=20000
+ * </pre>
+ */
+class VirtualThreadsBenchmarkTest {
+    private static final int PLATFORM_THREADS = 200;
+
+    @Test
+    void virtualThreadsOutrunAFixedPoolOnBlockingTasks() throws Exception {
+        assumeTrue(VirtualThreads.isSupported(), "virtual threads need JDK 21+");
+        int tasks = Integer.getInteger("patient.benchmark.tasks", 4000);
+        long blockMillis = Long.getLong("patient.benchmark.block-millis", 20);
+
+        double platform = run(Executors.newFixedThreadPool(PLATFORM_THREADS), tasks, blockMillis);
+        ThreadFactory virtualThreads = VirtualThreads.threadFactory("bench-vt-");
+        double virtual = run(Executors.newCachedThreadPool(virtualThreads), tasks, blockMillis);
+
+        System.out.printf("%d tasks blocking %d ms%n", tasks, blockMillis);
+        System.out.printf("%-26s %12.0f tasks/s%n", PLATFORM_THREADS + " platform threads", platform);
+        System.out.printf("%-26s %12.0f tasks/s%n", "virtual thread per task", virtual);
+        assertTrue(virtual > platform, "virtual threads should not be slower on blocking tasks");
+    }
+
+    private static double run(ExecutorService executor, int tasks, long blockMillis) throws Exception {
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(tasks);
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> {
+                    Thread.sleep(blockMillis);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return tasks / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}